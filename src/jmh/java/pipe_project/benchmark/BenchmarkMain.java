@@ -0,0 +1,38 @@
+package pipe_project.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks (ops/s) together with the GC profiler (allocation rate).
+ *
+ * Call with: mvn -Pjmh compile exec:exec
+ * or only some benchmarks: mvn -Pjmh compile exec:exec -Djmh.args="LaneUpdate"
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.addProfiler(GCProfiler.class)
+				.forks(1)
+				.warmupIterations(3)
+				.measurementIterations(5);
+		boolean included = false;
+		for (String arg : args) {
+			// Maven passes an empty argument when no benchmarks are selected.
+			for (String pattern : arg.trim().split("\\s+")) {
+				if (!pattern.isEmpty()) {
+					options.include(pattern);
+					included = true;
+				}
+			}
+		}
+		if (!included) {
+			options.include(BenchmarkMain.class.getPackage().getName() + ".*Benchmark");
+		}
+		new Runner(options.build()).run();
+	}
+}
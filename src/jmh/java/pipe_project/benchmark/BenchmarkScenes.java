@@ -0,0 +1,113 @@
+package pipe_project.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pipe_project.CompiledPetriNetRunner;
+import pipe_project.FFWTimePetriNetRunner;
+import pipe_project.MainPN;
+import pipe_project.PetriNetStepper;
+import traffic_sim.Drawable;
+import traffic_sim.Lane;
+import traffic_sim.LaneExtension;
+import traffic_sim.SimulationWorld;
+import traffic_sim.Vehicle;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+/**
+ * Scenes for the benchmarks.
+ *
+ * The scenes are built with the same builders as used in MainPN, each scene in its own
+ * SimulationWorld (so that benchmark iterations do not influence each other).
+ */
+public final class BenchmarkScenes {
+
+	// Distance between the cars put onto a lane when filling it.
+	private static final double CAR_SPACING = 20.;
+
+	/**
+	 * A world and the Petri net runners controlling its traffic lights.
+	 */
+	public static class Scene {
+		public final SimulationWorld world = new SimulationWorld();
+		public final List<Lane> lanes = new ArrayList<>();
+		public final List<PetriNetStepper> runners = new ArrayList<>();
+	}
+
+	private BenchmarkScenes() {
+	}
+
+	/**
+	 * Build a world with a number of easy intersections (see MainPN), each one
+	 * controlled by its own Petri net. The lanes are filled with vehiclesPerLane cars.
+	 *
+	 * @param compiled Run the Petri nets with CompiledPetriNetRunners instead of PIPE
+	 */
+	public static Scene createIntersections(int intersections, int vehiclesPerLane, boolean compiled)
+			throws PetriNetComponentException {
+		Scene scene = new Scene();
+		scene.world.makeCurrent();
+		try {
+			for (int i = 0; i < intersections; i++) {
+				List<Drawable> drawables = new ArrayList<>();
+				PetriNet net = MainPN.createEasyIntersection(drawables, 100, 100);
+				if (compiled) {
+					scene.runners.add(new CompiledPetriNetRunner(net));
+				} else {
+					FFWTimePetriNetRunner runner = new FFWTimePetriNetRunner(net);
+					runner.startRealTimeClock();
+					scene.runners.add(runner);
+				}
+				for (Drawable drawable : drawables) {
+					if (drawable instanceof Lane) {
+						scene.lanes.add((Lane) drawable);
+					}
+				}
+			}
+			if (!scene.runners.isEmpty()) {
+				scene.world.setPetriNetRunner(scene.runners.get(0));
+			}
+			for (Lane lane : scene.lanes) {
+				fillLane(lane, vehiclesPerLane);
+			}
+		} finally {
+			SimulationWorld.resetCurrent();
+		}
+		return scene;
+	}
+
+	/**
+	 * Build a ring road of two lanes of the given length - cars never leave
+	 * the ring, so the number of cars stays the same during a benchmark.
+	 */
+	public static Scene createRingRoad(int laneLength, int vehiclesPerLane) {
+		Scene scene = new Scene();
+		scene.world.makeCurrent();
+		try {
+			LaneExtension west = new LaneExtension(0, 0);
+			LaneExtension east = new LaneExtension(laneLength, 0);
+			scene.lanes.add(new Lane("RingEast", west, east));
+			scene.lanes.add(new Lane("RingWest", east, west));
+			for (Lane lane : scene.lanes) {
+				fillLane(lane, vehiclesPerLane);
+			}
+		} finally {
+			SimulationWorld.resetCurrent();
+		}
+		return scene;
+	}
+
+	/*
+	 * Put cars onto a lane, evenly spread (as many as fit onto the lane).
+	 * The car closest to the end of the lane has to enter first.
+	 */
+	private static void fillLane(Lane lane, int vehiclesPerLane) {
+		int fitting = (int) (lane.getLength() / CAR_SPACING) - 1;
+		int number = Math.min(vehiclesPerLane, fitting);
+		for (int i = 0; i < number; i++) {
+			Vehicle veh = new Vehicle(lane.getName() + "_" + i, lane);
+			veh.setPositionInLane(lane.getLength() - (i + 1) * lane.getLength() / (number + 1));
+		}
+	}
+}
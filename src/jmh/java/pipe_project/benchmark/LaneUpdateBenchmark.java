@@ -0,0 +1,64 @@
+package pipe_project.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import traffic_sim.Lane;
+import traffic_sim.Vehicle;
+
+/**
+ * Moving the cars of a lane: Lane.updateStep against updating every single Vehicle.
+ *
+ * The cars drive on a ring road, so the number of cars does not change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LaneUpdateBenchmark {
+
+	private static final double UPDATE_STEP = 0.1;
+	private static final int LANE_LENGTH = 5000;
+
+	@Param({"1", "10", "100"})
+	public int vehiclesPerLane;
+
+	private BenchmarkScenes.Scene scene;
+	private final List<Vehicle> vehicles = new ArrayList<>();
+
+	@Setup(Level.Iteration)
+	public void buildScene() {
+		scene = BenchmarkScenes.createRingRoad(LANE_LENGTH, vehiclesPerLane);
+	}
+
+	@Benchmark
+	public void laneUpdateStep() {
+		for (Lane lane : scene.lanes) {
+			lane.updateStep(UPDATE_STEP);
+		}
+	}
+
+	@Benchmark
+	public void vehicleUpdate() {
+		for (Lane lane : scene.lanes) {
+			// Cars can switch to the other lane during their update.
+			vehicles.clear();
+			vehicles.addAll(lane.getVehiclesOnLane());
+			for (Vehicle veh : vehicles) {
+				if (veh.getCurrentLane() == lane) {
+					veh.update(UPDATE_STEP);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package pipe_project.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pipe_project.PetriNetStepper;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+
+/**
+ * Advancing the Petri nets of the intersections by one simulation step (100 ms).
+ *
+ * FAST_FORWARD is the stepping of the HeadlessSimulation, SYNCHRONIZED the one of the
+ * TrafficController in real time mode (which waits for the real time clock).
+ * COMPILED steps the same nets in fast forward mode with the CompiledPetriNetRunner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PetriNetStepBenchmark {
+
+	private static final int STEP_MILLIS = 100;
+
+	public enum Stepping {
+		FAST_FORWARD, SYNCHRONIZED, COMPILED
+	}
+
+	@Param({"1", "4", "16"})
+	public int intersections;
+
+	@Param({"FAST_FORWARD", "SYNCHRONIZED", "COMPILED"})
+	public Stepping stepping;
+
+	private BenchmarkScenes.Scene scene;
+
+	@Setup(Level.Iteration)
+	public void buildScene() throws PetriNetComponentException {
+		scene = BenchmarkScenes.createIntersections(intersections, 0, stepping == Stepping.COMPILED);
+	}
+
+	@Benchmark
+	public void step() {
+		for (PetriNetStepper runner : scene.runners) {
+			if (stepping == Stepping.SYNCHRONIZED) {
+				runner.stepPetriNetSynchronized(STEP_MILLIS);
+			} else {
+				runner.stepFastForwardPetriNet(STEP_MILLIS);
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package pipe_project.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pipe_project.PetriNetStepper;
+import traffic_sim.HeadlessSimulation.UpdateMode;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+
+/**
+ * A complete simulation step as done by the HeadlessSimulation:
+ * the Petri nets are advanced in fast forward mode and the world is updated.
+ *
+ * The scene is rebuilt for every iteration, as the traffic changes during a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SimulationStepBenchmark {
+
+	private static final double UPDATE_STEP = 0.1;
+
+	@Param({"1", "4", "16"})
+	public int intersections;
+
+	@Param({"0", "5", "20"})
+	public int vehiclesPerLane;
+
+	@Param({"SERIAL", "PARALLEL", "EVENT_DRIVEN"})
+	public UpdateMode updateMode;
+
+	// Petri nets run by the CompiledPetriNetRunner instead of PIPE.
+	@Param({"false", "true"})
+	public boolean compiledNet;
+
+	private BenchmarkScenes.Scene scene;
+
+	@Setup(Level.Iteration)
+	public void buildScene() throws PetriNetComponentException {
+		scene = BenchmarkScenes.createIntersections(intersections, vehiclesPerLane, compiledNet);
+	}
+
+	@Benchmark
+	public double step() {
+		for (PetriNetStepper runner : scene.runners) {
+			runner.stepFastForwardPetriNet((int) (UPDATE_STEP * 1000));
+		}
+		switch (updateMode) {
+			case SERIAL:
+				scene.world.updateAll(UPDATE_STEP);
+				break;
+			case EVENT_DRIVEN:
+				scene.world.updateEventDriven(UPDATE_STEP);
+				break;
+			default:
+				scene.world.updateAllTwoPhase(UPDATE_STEP, true);
+		}
+		return scene.world.getCurrentTime();
+	}
+}
@@ -0,0 +1,461 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.InboundArc;
+import uk.ac.imperial.pipe.models.petrinet.InboundInhibitorArc;
+import uk.ac.imperial.pipe.models.petrinet.OutboundArc;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+/**
+ * A Petri net compiled into dense int arrays.
+ *
+ * Nets as built in MainPN.buildNet (one token type, constant arc weights,
+ * DiscreteExternalActionCallTransitions) are converted into a marking vector, the
+ * pre and post incidence of all transitions, inhibitor masks and a delay array.
+ * Places and transitions are addressed by their index, the ids are only needed
+ * for compiling and for marking places from outside.
+ *
+ * Enabledness is checked on a bit set of the marked places: a transition is enabled
+ * when all its input places are marked and none of its inhibitor places is marked
+ * (token counts are only compared for arcs with a weight above one).
+ * The external actions are invoked through the ExternalActionDispatchTable of the net,
+ * so an action replaced with setExternalAction() is also invoked by the compiled net.
+ *
+ * For incremental tracking of the enabled transitions the net also knows which
+ * transitions have to be checked again when the marking of a place changes.
+ */
+public class CompiledPetriNet {
+
+	// Places
+	private final String[] place_ids;
+	private final Map<String, Integer> place_index = new HashMap<>();
+	private final int[] marking;
+	// Bit set of all places holding at least one token.
+	private final long[] marked;
+	// Hash of the marking (updated with every change of the marking).
+	private final int[] place_hash_factor;
+	private int marking_hash = 0;
+
+	// Transitions
+	private final String[] transition_ids;
+	private final boolean[] timed;
+	private final int[] delay;
+	private final int[] priority;
+	private final ExternalActionInterface[] actions;
+	// Incidence: input and output places (and the weights of the arcs) per transition.
+	private final int[][] pre_places, pre_weights;
+	private final int[][] post_places, post_weights;
+	// Bit masks of the input and inhibitor places per transition.
+	private final long[][] pre_mask, inhibitor_mask;
+	// Transitions with an input arc of a weight above one (counts have to be compared).
+	private final boolean[] count_check;
+	// Transitions whose enabledness depends on a place (input or inhibitor arc).
+	private final int[][] place_dependents;
+	// Transitions whose enabledness can change when a transition fires (including itself).
+	private final int[][] firing_dependents;
+
+	/**
+	 * Compile a PIPE Petri net.
+	 *
+	 * @throws PetriNetComponentException if the net uses more than one token type
+	 *         or arc weights which are not constant integers
+	 */
+	public static CompiledPetriNet compile(PetriNet net) throws PetriNetComponentException {
+		Builder builder = new Builder();
+		String token = null;
+		for (Place place : net.getPlaces()) {
+			int tokens = 0;
+			for (Map.Entry<String, Integer> count : place.getTokenCounts().entrySet()) {
+				if (count.getValue() > 0) {
+					token = checkToken(token, count.getKey());
+					tokens += count.getValue();
+				}
+			}
+			builder.addPlace(place.getId(), tokens);
+		}
+		ExternalActionDispatchTable dispatchTable = ExternalActionDispatchTable.build(net);
+		int index = 0;
+		for (Transition transition : net.getTransitions()) {
+			ExternalActionInterface action = null;
+			if (transition instanceof DiscreteExternalActionCallTransition) {
+				int entry = index;
+				action = () -> dispatchTable.invoke(entry);
+			}
+			index++;
+			int t = builder.addTransition(transition.getId(), transition.isTimed(),
+					transition.getDelay(), transition.getPriority(), action);
+			for (InboundArc arc : net.getInboundArcs(transition)) {
+				if (arc instanceof InboundInhibitorArc) {
+					builder.addInhibitorArc(arc.getSource().getId(), t);
+				} else {
+					for (Map.Entry<String, String> weight : arc.getTokenWeights().entrySet()) {
+						token = checkToken(token, weight.getKey());
+						builder.addInputArc(arc.getSource().getId(), t, parseWeight(arc.getId(), weight.getValue()));
+					}
+				}
+			}
+			for (OutboundArc arc : net.getOutboundArcs(transition)) {
+				for (Map.Entry<String, String> weight : arc.getTokenWeights().entrySet()) {
+					token = checkToken(token, weight.getKey());
+					builder.addOutputArc(t, arc.getTarget().getId(), parseWeight(arc.getId(), weight.getValue()));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static String checkToken(String token, String used) throws PetriNetComponentException {
+		if ((token != null) && !token.equals(used)) {
+			throw new PetriNetComponentException("Only nets with a single token type can be compiled, found "
+					+ token + " and " + used);
+		}
+		return used;
+	}
+
+	private static int parseWeight(String arcId, String weight) throws PetriNetComponentException {
+		try {
+			return Integer.parseInt(weight.trim());
+		} catch (NumberFormatException e) {
+			throw new PetriNetComponentException("Weight of arc " + arcId + " is not a constant: " + weight);
+		}
+	}
+
+	/**
+	 * Collects places, transitions and arcs before the arrays are built.
+	 * Used for compiling a PIPE net - but nets can also be put together directly.
+	 */
+	public static class Builder {
+		private final List<String> places = new ArrayList<>();
+		private final List<Integer> initial_marking = new ArrayList<>();
+		private final Map<String, Integer> place_index = new HashMap<>();
+		private final List<String> transitions = new ArrayList<>();
+		private final List<Boolean> timed = new ArrayList<>();
+		private final List<Integer> delays = new ArrayList<>();
+		private final List<Integer> priorities = new ArrayList<>();
+		private final List<ExternalActionInterface> actions = new ArrayList<>();
+		private final List<List<int[]>> inputs = new ArrayList<>();
+		private final List<List<int[]>> outputs = new ArrayList<>();
+		private final List<List<Integer>> inhibitors = new ArrayList<>();
+
+		public int addPlace(String id, int tokens) {
+			place_index.put(id, places.size());
+			places.add(id);
+			initial_marking.add(tokens);
+			return places.size() - 1;
+		}
+
+		public int addTransition(String id, boolean isTimed, int delay, int priority, ExternalActionInterface action) {
+			transitions.add(id);
+			timed.add(isTimed);
+			delays.add(delay);
+			priorities.add(priority);
+			actions.add(action);
+			inputs.add(new ArrayList<>());
+			outputs.add(new ArrayList<>());
+			inhibitors.add(new ArrayList<>());
+			return transitions.size() - 1;
+		}
+
+		public void addInputArc(String placeId, int transition, int weight) throws PetriNetComponentException {
+			inputs.get(transition).add(new int[] {place(placeId), weight});
+		}
+
+		public void addOutputArc(int transition, String placeId, int weight) throws PetriNetComponentException {
+			outputs.get(transition).add(new int[] {place(placeId), weight});
+		}
+
+		public void addInhibitorArc(String placeId, int transition) throws PetriNetComponentException {
+			inhibitors.get(transition).add(place(placeId));
+		}
+
+		private int place(String placeId) throws PetriNetComponentException {
+			Integer index = place_index.get(placeId);
+			if (index == null) {
+				throw new PetriNetComponentException("Unknown place " + placeId);
+			}
+			return index;
+		}
+
+		public CompiledPetriNet build() {
+			return new CompiledPetriNet(this);
+		}
+	}
+
+	private CompiledPetriNet(Builder builder) {
+		int places = builder.places.size();
+		int words = (places + 63) >>> 6;
+		place_ids = builder.places.toArray(new String[places]);
+		place_index.putAll(builder.place_index);
+		marking = new int[places];
+		marked = new long[words];
+		place_hash_factor = new int[places];
+		for (int p = 0; p < places; p++) {
+			place_hash_factor[p] = markingHashFactor(place_ids[p]);
+		}
+		for (int p = 0; p < places; p++) {
+			setTokens(p, builder.initial_marking.get(p));
+		}
+
+		int transitions = builder.transitions.size();
+		transition_ids = builder.transitions.toArray(new String[transitions]);
+		timed = new boolean[transitions];
+		delay = new int[transitions];
+		priority = new int[transitions];
+		actions = builder.actions.toArray(new ExternalActionInterface[transitions]);
+		pre_places = new int[transitions][];
+		pre_weights = new int[transitions][];
+		post_places = new int[transitions][];
+		post_weights = new int[transitions][];
+		pre_mask = new long[transitions][words];
+		inhibitor_mask = new long[transitions][words];
+		count_check = new boolean[transitions];
+		for (int t = 0; t < transitions; t++) {
+			timed[t] = builder.timed.get(t);
+			delay[t] = builder.delays.get(t);
+			priority[t] = builder.priorities.get(t);
+			List<int[]> inputs = builder.inputs.get(t);
+			pre_places[t] = new int[inputs.size()];
+			pre_weights[t] = new int[inputs.size()];
+			for (int i = 0; i < inputs.size(); i++) {
+				pre_places[t][i] = inputs.get(i)[0];
+				pre_weights[t][i] = inputs.get(i)[1];
+				pre_mask[t][pre_places[t][i] >>> 6] |= 1L << pre_places[t][i];
+				count_check[t] |= pre_weights[t][i] > 1;
+			}
+			List<int[]> outputs = builder.outputs.get(t);
+			post_places[t] = new int[outputs.size()];
+			post_weights[t] = new int[outputs.size()];
+			for (int i = 0; i < outputs.size(); i++) {
+				post_places[t][i] = outputs.get(i)[0];
+				post_weights[t][i] = outputs.get(i)[1];
+			}
+			for (int p : builder.inhibitors.get(t)) {
+				inhibitor_mask[t][p >>> 6] |= 1L << p;
+			}
+		}
+
+		List<Set<Integer>> dependents = new ArrayList<>();
+		for (int p = 0; p < places; p++) {
+			dependents.add(new TreeSet<>());
+		}
+		for (int t = 0; t < transitions; t++) {
+			for (int p : pre_places[t]) {
+				dependents.get(p).add(t);
+			}
+			for (int p : builder.inhibitors.get(t)) {
+				dependents.get(p).add(t);
+			}
+		}
+		place_dependents = new int[places][];
+		for (int p = 0; p < places; p++) {
+			place_dependents[p] = toArray(dependents.get(p));
+		}
+		firing_dependents = new int[transitions][];
+		for (int t = 0; t < transitions; t++) {
+			Set<Integer> affected = new TreeSet<>();
+			affected.add(t);
+			for (int p : pre_places[t]) {
+				affected.addAll(dependents.get(p));
+			}
+			for (int p : post_places[t]) {
+				affected.addAll(dependents.get(p));
+			}
+			firing_dependents[t] = toArray(affected);
+		}
+	}
+
+	private static int[] toArray(Set<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (int value : values) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
+	/**
+	 * Check if a transition is enabled in the current marking.
+	 */
+	public boolean isEnabled(int transition) {
+		long[] pre = pre_mask[transition];
+		long[] inhibitor = inhibitor_mask[transition];
+		for (int w = 0; w < marked.length; w++) {
+			if (((pre[w] & ~marked[w]) != 0) || ((inhibitor[w] & marked[w]) != 0)) {
+				return false;
+			}
+		}
+		if (count_check[transition]) {
+			int[] places = pre_places[transition];
+			int[] weights = pre_weights[transition];
+			for (int i = 0; i < places.length; i++) {
+				if (marking[places[i]] < weights[i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fire a transition (which has to be enabled): tokens are moved
+	 * and the external action of the transition is invoked.
+	 */
+	public void fire(int transition) {
+		int[] places = pre_places[transition];
+		int[] weights = pre_weights[transition];
+		for (int i = 0; i < places.length; i++) {
+			setTokens(places[i], marking[places[i]] - weights[i]);
+		}
+		places = post_places[transition];
+		weights = post_weights[transition];
+		for (int i = 0; i < places.length; i++) {
+			setTokens(places[i], marking[places[i]] + weights[i]);
+		}
+		if (actions[transition] != null) {
+			actions[transition].invokeExternalAction();
+		}
+	}
+
+	/**
+	 * Set the number of tokens in a place.
+	 */
+	public void setTokens(int place, int tokens) {
+		marking_hash += (tokens - marking[place]) * place_hash_factor[place];
+		marking[place] = tokens;
+		if (tokens > 0) {
+			marked[place >>> 6] |= 1L << place;
+		} else {
+			marked[place >>> 6] &= ~(1L << place);
+		}
+	}
+
+	/*
+	 * Transitions which have to be checked again after the marking of the place changed.
+	 */
+	int[] getPlaceDependents(int place) {
+		return place_dependents[place];
+	}
+
+	/*
+	 * Transitions which have to be checked again after the transition fired.
+	 */
+	int[] getFiringDependents(int transition) {
+		return firing_dependents[transition];
+	}
+
+	/**
+	 * Hash of the current marking: the sum of the number of tokens in each place
+	 * multiplied with the markingHashFactor of the place. It does not depend on the
+	 * order of the places - the FFWTimePetriNetRunner computes the same hash.
+	 */
+	public int getMarkingHash() {
+		return marking_hash;
+	}
+
+	/**
+	 * Factor of a place for the marking hash (a mixed hash of the place id).
+	 */
+	public static int markingHashFactor(String placeId) {
+		int h = placeId.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) | 1;
+	}
+
+	public int getTokens(int place) {
+		return marking[place];
+	}
+
+	/**
+	 * Index of a place - or -1 if there is no place with this id.
+	 */
+	public int getPlaceIndex(String placeId) {
+		Integer index = place_index.get(placeId);
+		return (index != null) ? index : -1;
+	}
+
+	public String getPlaceId(int place) {
+		return place_ids[place];
+	}
+
+	public int getNumberOfPlaces() {
+		return place_ids.length;
+	}
+
+	public String getTransitionId(int transition) {
+		return transition_ids[transition];
+	}
+
+	public int getNumberOfTransitions() {
+		return transition_ids.length;
+	}
+
+	public boolean isTimed(int transition) {
+		return timed[transition];
+	}
+
+	public int getDelay(int transition) {
+		return delay[transition];
+	}
+
+	public int getPriority(int transition) {
+		return priority[transition];
+	}
+
+	/*
+	 * The arcs of a transition (the arrays of the net, not to be changed).
+	 */
+	int[] getInputPlaces(int transition) {
+		return pre_places[transition];
+	}
+
+	int[] getInputWeights(int transition) {
+		return pre_weights[transition];
+	}
+
+	int[] getOutputPlaces(int transition) {
+		return post_places[transition];
+	}
+
+	int[] getOutputWeights(int transition) {
+		return post_weights[transition];
+	}
+
+	/*
+	 * Places connected to the transition by an inhibitor arc (ascending).
+	 */
+	int[] getInhibitorPlaces(int transition) {
+		long[] mask = inhibitor_mask[transition];
+		int count = 0;
+		for (long word : mask) {
+			count += Long.bitCount(word);
+		}
+		int[] places = new int[count];
+		int i = 0;
+		for (int w = 0; w < mask.length; w++) {
+			for (long word = mask[w]; word != 0; word &= word - 1) {
+				places[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return places;
+	}
+
+	ExternalActionInterface getAction(int transition) {
+		return actions[transition];
+	}
+
+	/*
+	 * Copy of the current marking (indexed by place).
+	 */
+	public int[] getMarking() {
+		return Arrays.copyOf(marking, marking.length);
+	}
+}
@@ -0,0 +1,208 @@
+package pipe_project;
+
+import java.util.Arrays;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+/**
+ * Runs a CompiledPetriNet - alternative to the FFWTimePetriNetRunner.
+ *
+ * Timed transitions fire when they have been enabled for their delay (a transition
+ * which gets disabled in between has to wait its full delay again when it is enabled
+ * again). Immediate transitions fire first, in the order of their priority.
+ * Transitions becoming due at the same time fire in the order of the net.
+ *
+ * The enabled transitions are tracked incrementally: after a firing or marking
+ * a place only the transitions connected to the changed places are checked again.
+ * Enabled timed transitions are kept in a heap by the time they become due, so the
+ * cost of a step depends on the activity in the net - not on the size of the net.
+ *
+ * The runner is not running in a thread of its own: the Petri net is only advanced
+ * in the step functions which are called from the simulation loop.
+ */
+public class CompiledPetriNetRunner implements PetriNetStepper {
+
+	private final CompiledPetriNet net;
+	// Time (in ms of the Petri net) at which a transition becomes due,
+	// -1 for transitions which are not enabled.
+	private final long[] due_time;
+	// Enabled immediate transitions (by priority) and timed transitions (by due time).
+	private final TransitionHeap immediate_transitions;
+	private final TransitionHeap timed_transitions;
+	private long current_time = 0;
+	private long real_start_time = -1;
+	private final long creation_time = System.currentTimeMillis();
+	// Firings are published into the pipeline (if set) - by their index in the pipeline.
+	private FiringEventPipeline firing_pipeline;
+	private int[] pipeline_index;
+	// Markings to apply before the next step.
+	private final MarkingBatch marking_batch = new MarkingBatch();
+	private final MarkingBatch.Target net_target = (placeId, token, count) -> markPlace(placeId, token, count);
+
+	public CompiledPetriNetRunner(PetriNet petriNet) throws PetriNetComponentException {
+		this(CompiledPetriNet.compile(petriNet));
+	}
+
+	public CompiledPetriNetRunner(CompiledPetriNet net) {
+		this.net = net;
+		this.due_time = new long[net.getNumberOfTransitions()];
+		Arrays.fill(due_time, -1);
+		this.immediate_transitions = new TransitionHeap(net.getNumberOfTransitions());
+		this.timed_transitions = new TransitionHeap(net.getNumberOfTransitions());
+		for (int t = 0; t < due_time.length; t++) {
+			updateTransition(t);
+		}
+	}
+
+	@Override
+	public void stepFastForwardPetriNet(int duration) {
+		marking_batch.applyTo(net_target);
+		long endTime = current_time + duration;
+		while (true) {
+			int transition = nextDueTransition();
+			if (transition >= 0) {
+				fire(transition);
+				continue;
+			}
+			long nextFiringTime = getNextFiringTime();
+			if ((nextFiringTime < 0) || (nextFiringTime > endTime)) {
+				break;
+			}
+			current_time = nextFiringTime;
+		}
+		current_time = endTime;
+	}
+
+	/*
+	 * Like stepFastForwardPetriNet, but waits afterwards
+	 * if the Petri net got ahead of the real time.
+	 */
+	@Override
+	public void stepPetriNetSynchronized(int duration) {
+		if (real_start_time < 0) {
+			real_start_time = System.currentTimeMillis() - current_time;
+		}
+		stepFastForwardPetriNet(duration);
+		long ahead = current_time - (System.currentTimeMillis() - real_start_time);
+		if (ahead > 0) {
+			try {
+				Thread.sleep(ahead);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Set the number of tokens in a place (the net only knows one token type,
+	 * the token name is ignored).
+	 */
+	@Override
+	public void markPlace(String placeId, String token, int count) {
+		int place = net.getPlaceIndex(placeId);
+		if (place < 0) {
+			throw new IllegalArgumentException("Unknown place " + placeId);
+		}
+		markPlace(place, count);
+	}
+
+	/*
+	 * Set the number of tokens in a place given by its index.
+	 */
+	void markPlace(int place, int count) {
+		net.setTokens(place, count);
+		for (int t : net.getPlaceDependents(place)) {
+			updateTransition(t);
+		}
+	}
+
+	@Override
+	public void markPlaceBatched(String placeId, String token, int count) {
+		marking_batch.add(placeId, token, count);
+	}
+
+	/**
+	 * Publish all firings of this runner into the pipeline.
+	 */
+	public void setFiringPipeline(FiringEventPipeline pipeline) {
+		int[] index = new int[net.getNumberOfTransitions()];
+		for (int t = 0; t < index.length; t++) {
+			index[t] = pipeline.registerTransition(net.getTransitionId(t));
+		}
+		this.pipeline_index = index;
+		this.firing_pipeline = pipeline;
+	}
+
+	@Override
+	public long getPNTimeSinceStart() {
+		return current_time;
+	}
+
+	/**
+	 * Time of the next firing of a timed transition, -1 if no transition is enabled.
+	 */
+	public long getNextFiringTime() {
+		if (!immediate_transitions.isEmpty()) {
+			return current_time;
+		}
+		return timed_transitions.isEmpty() ? -1 : timed_transitions.peekKey();
+	}
+
+	public CompiledPetriNet getNet() {
+		return net;
+	}
+
+	/*
+	 * Fire a transition and check the transitions connected to the changed places.
+	 */
+	private void fire(int transition) {
+		due_time[transition] = -1;
+		immediate_transitions.remove(transition);
+		timed_transitions.remove(transition);
+		net.fire(transition);
+		if (firing_pipeline != null) {
+			firing_pipeline.publish(pipeline_index[transition], current_time,
+					System.currentTimeMillis() - creation_time, net.getMarkingHash());
+		}
+		for (int t : net.getFiringDependents(transition)) {
+			updateTransition(t);
+		}
+	}
+
+	/*
+	 * A transition which got enabled becomes due after its delay,
+	 * a transition which got disabled is not due anymore.
+	 */
+	private void updateTransition(int transition) {
+		if (net.isEnabled(transition)) {
+			if (due_time[transition] < 0) {
+				if (net.isTimed(transition)) {
+					due_time[transition] = current_time + net.getDelay(transition);
+					timed_transitions.add(transition, due_time[transition]);
+				} else {
+					due_time[transition] = current_time;
+					immediate_transitions.add(transition, -net.getPriority(transition));
+				}
+			}
+		} else if (due_time[transition] >= 0) {
+			due_time[transition] = -1;
+			immediate_transitions.remove(transition);
+			timed_transitions.remove(transition);
+		}
+	}
+
+	/*
+	 * The transition to fire now: immediate transitions by priority,
+	 * then timed transitions by due time (and the order of the net). -1 if none is due.
+	 */
+	private int nextDueTransition() {
+		if (!immediate_transitions.isEmpty()) {
+			return immediate_transitions.peek();
+		}
+		if (!timed_transitions.isEmpty() && (timed_transitions.peekKey() <= current_time)) {
+			return timed_transitions.peek();
+		}
+		return -1;
+	}
+}
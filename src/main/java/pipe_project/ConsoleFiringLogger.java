@@ -0,0 +1,41 @@
+package pipe_project;
+
+import java.io.PrintStream;
+
+/**
+ * Prints fired transitions to the console (as done before by the
+ * FiringGenericActionListener). The output is collected and written in blocks.
+ */
+public class ConsoleFiringLogger implements FiringConsumer {
+
+	private static final int BLOCK_SIZE = 8192;
+
+	private final PrintStream out;
+	private final StringBuilder block = new StringBuilder(BLOCK_SIZE);
+
+	public ConsoleFiringLogger() {
+		this(System.out);
+	}
+
+	public ConsoleFiringLogger(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void onFiring(int transition, String transitionName, long pnTime, long realTime, int markingHash) {
+		block.append("Fired transition ").append(transitionName)
+			.append(" - time: ").append(pnTime).append(" / ").append(realTime).append('\n');
+		if (block.length() >= BLOCK_SIZE) {
+			flush();
+		}
+	}
+
+	@Override
+	public void flush() {
+		if (block.length() > 0) {
+			out.print(block);
+			out.flush();
+			block.setLength(0);
+		}
+	}
+}
@@ -17,11 +17,18 @@ import uk.ac.imperial.pipe.visitor.component.PetriNetComponentVisitor;
  * In modular PetriNets for execution cloned instances are called.
  * This requires the indirect approach to attach an external action to the transition
  * which can have references and access directly to simulation objects.
+ *
+ * When a runner loads the net, the transition is bound to the ExternalActionDispatchTable
+ * of the net - the binding is copied with the transition, so all clones invoke the
+ * action through the same table entry.
  */
 public class DiscreteExternalActionCallTransition extends DiscreteExternalTransition {
 	
 	// The coupled external action (has to implement the ExternalActionInterface)
 	protected ExternalActionInterface externalAction;
+	// Table of the net holding the action and the index of this transition in it.
+	private ExternalActionDispatchTable dispatch_table;
+	private int dispatch_index = -1;
 
 	// A copy constructor is required.
 	public DiscreteExternalActionCallTransition(DiscreteExternalActionCallTransition transition) {
@@ -29,6 +36,8 @@ public class DiscreteExternalActionCallTransition extends DiscreteExternalTransi
 		this.timed = transition.isTimed();
 		this.setDelay(transition.getDelay());
 		this.externalAction = transition.externalAction;
+		this.dispatch_table = transition.dispatch_table;
+		this.dispatch_index = transition.dispatch_index;
 	}
 
 	public DiscreteExternalActionCallTransition(String id, String name, ExternalActionInterface extAct) {
@@ -40,11 +49,45 @@ public class DiscreteExternalActionCallTransition extends DiscreteExternalTransi
 	// Setting the external action which shall be called when the transition is fired.	
 	public void setExternalAction(ExternalActionInterface extAct) {
 		this.externalAction = extAct;
+		if (dispatch_table != null) {
+			dispatch_table.setAction(dispatch_index, extAct);
+		}
 	}
 	
 	public ExternalActionInterface getExternalAction() {
 		return this.externalAction;
 	}
+
+	/*
+	 * Bind the transition to the entry of the dispatch table of its net.
+	 */
+	void bindDispatchTable(ExternalActionDispatchTable table, int index) {
+		this.dispatch_table = table;
+		this.dispatch_index = index;
+	}
+
+	/*
+	 * The table the transition is bound to (null if it is not bound).
+	 */
+	ExternalActionDispatchTable getBoundDispatchTable() {
+		return dispatch_table;
+	}
+
+	/*
+	 * The dispatch table holding the action - a table of its own
+	 * if the transition was not bound when its net was loaded.
+	 */
+	ExternalActionDispatchTable getDispatchTable() {
+		if (dispatch_table == null) {
+			bindDispatchTable(ExternalActionDispatchTable.single(getId(), externalAction), 0);
+		}
+		return dispatch_table;
+	}
+
+	int getDispatchIndex() {
+		getDispatchTable();
+		return dispatch_index;
+	}
 	
 	/**
      * the visitor is a {@link uk.ac.imperial.pipe.models.petrinet.DiscreteTransitionVisitor} or a
@@ -0,0 +1,120 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+/**
+ * The external actions of the transitions of a net, by the index of the transition
+ * (the order of PetriNet.getTransitions()).
+ *
+ * The table is built once per net - the first runner loading the net builds it,
+ * later runners get the same table, so actions set with setExternalAction() reach
+ * the copies of the transitions in all runners. Each
+ * DiscreteExternalActionCallTransition gets a reference to the table and its index,
+ * which are copied together with the transition (TransitionCloner) - so a fired
+ * transition invokes its action with an array lookup instead of looking it up
+ * through the ExternalTransitionProvider again.
+ */
+public class ExternalActionDispatchTable {
+
+	private final String[] transition_ids;
+	private final ExternalActionInterface[] actions;
+
+	private ExternalActionDispatchTable(String[] transitionIds, ExternalActionInterface[] actions) {
+		this.transition_ids = transitionIds;
+		this.actions = actions;
+	}
+
+	/**
+	 * Build the table of a net and bind the DiscreteExternalActionCallTransitions
+	 * of the net to it (transitions without an external action get no entry).
+	 * If the transitions are bound to a table of the net already, that table is returned.
+	 */
+	public static ExternalActionDispatchTable build(PetriNet net) {
+		List<Transition> transitions = new ArrayList<>(net.getTransitions());
+		ExternalActionDispatchTable bound = boundTable(transitions);
+		if (bound != null) {
+			return bound;
+		}
+		String[] ids = new String[transitions.size()];
+		ExternalActionInterface[] actions = new ExternalActionInterface[transitions.size()];
+		ExternalActionDispatchTable table = new ExternalActionDispatchTable(ids, actions);
+		for (int t = 0; t < ids.length; t++) {
+			Transition transition = transitions.get(t);
+			ids[t] = transition.getId();
+			if (transition instanceof DiscreteExternalActionCallTransition) {
+				DiscreteExternalActionCallTransition call = (DiscreteExternalActionCallTransition) transition;
+				actions[t] = call.getExternalAction();
+				call.bindDispatchTable(table, t);
+			}
+		}
+		return table;
+	}
+
+	/*
+	 * The table all DiscreteExternalActionCallTransitions are bound to - null if they are not
+	 * bound (or not to the same table, or the transitions of the net changed since).
+	 */
+	private static ExternalActionDispatchTable boundTable(List<Transition> transitions) {
+		ExternalActionDispatchTable table = null;
+		for (int t = 0; t < transitions.size(); t++) {
+			Transition transition = transitions.get(t);
+			if (transition instanceof DiscreteExternalActionCallTransition) {
+				DiscreteExternalActionCallTransition call = (DiscreteExternalActionCallTransition) transition;
+				ExternalActionDispatchTable callTable = call.getBoundDispatchTable();
+				if (callTable == null || (table != null && callTable != table)
+						|| callTable.size() != transitions.size() || call.getDispatchIndex() != t) {
+					return null;
+				}
+				table = callTable;
+			}
+		}
+		if (table != null) {
+			for (int t = 0; t < transitions.size(); t++) {
+				if (!transitions.get(t).getId().equals(table.getTransitionId(t))) {
+					return null;
+				}
+			}
+		}
+		return table;
+	}
+
+	/*
+	 * Table of a single transition not belonging to a built table.
+	 */
+	static ExternalActionDispatchTable single(String transitionId, ExternalActionInterface action) {
+		return new ExternalActionDispatchTable(new String[] {transitionId}, new ExternalActionInterface[] {action});
+	}
+
+	/**
+	 * Invoke the action of a transition (nothing if it has none).
+	 */
+	public void invoke(int transition) {
+		ExternalActionInterface action = actions[transition];
+		if (action != null) {
+			action.invokeExternalAction();
+		}
+	}
+
+	public ExternalActionInterface getAction(int transition) {
+		return actions[transition];
+	}
+
+	/*
+	 * Replace the action of a transition (also for all copies of the transition).
+	 */
+	void setAction(int transition, ExternalActionInterface action) {
+		actions[transition] = action;
+	}
+
+	public String getTransitionId(int transition) {
+		return transition_ids[transition];
+	}
+
+	public int size() {
+		return actions.length;
+	}
+}
@@ -1,6 +1,7 @@
 package pipe_project;
 
 import uk.ac.imperial.pipe.runner.RealTimePetriNetRunner;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentNotFoundException;
 import uk.ac.imperial.pipe.models.petrinet.*;
 
 /**
@@ -12,19 +13,61 @@ import uk.ac.imperial.pipe.models.petrinet.*;
  * is guarded by semaphores. Only when the runner is not working actively on the 
  * PN it allows to change PN places or fire externally transitions. 
  * 
+ * Stepping in fast forward mode keeps track of the next firing time: as long as
+ * no place was marked from outside and no transition becomes due, a step only
+ * advances the time of the net (PIPE's evaluation of all transitions is skipped).
+ *
+ * Markings from observers are batched (markPlaceBatched) and applied at the beginning
+ * of a step under the same acquisition of the semaphore as the step itself.
+ *
+ * External actions of fired transitions are invoked through the
+ * ExternalActionDispatchTable of the net, which is built when the runner is created.
  */
-public class FFWTimePetriNetRunner extends RealTimePetriNetRunner {
+public class FFWTimePetriNetRunner extends RealTimePetriNetRunner implements PetriNetStepper {
 	
 	private long initialFiringTime, nextFiringTime, lastFiringTime;
+	// Set when the marking was changed from outside since the last step -
+	// the known next firing time might be wrong then.
+	private volatile boolean marking_changed = true;
+	// Markings to apply before the next step (while the semaphore is held).
+	private final MarkingBatch marking_batch = new MarkingBatch();
+	private final MarkingBatch.Target executable_net_target = this::setTokenCount;
 	
 	public FFWTimePetriNetRunner(PetriNet petriNet) {
-		super(petriNet);
+		super(withDispatchTable(petriNet));
+	}
+
+	/*
+	 * Bind the external actions of the net to its dispatch table
+	 * before PIPE copies the transitions into the executable net.
+	 */
+	private static PetriNet withDispatchTable(PetriNet petriNet) {
+		ExternalActionDispatchTable.build(petriNet);
+		return petriNet;
 	}
 
 
 	public void stepFastForwardPetriNet(int duration) {
+		if (!marking_changed && marking_batch.isEmpty()) {
+			long currentTime = this.executablePetriNet.getTimedState().getCurrentTime();
+			if ((nextFiringTime < 0) || (nextFiringTime > currentTime + duration)) {
+				// Nothing is enabled or nothing becomes due in this step.
+				start();
+				setCurrentTimeExecutablePetriNet(currentTime + duration);
+				end();
+				return;
+			}
+		}
 		logger.info("run ExecutablePetriNet "+executablePetriNet.getName().getName());
 		start();
+		try {
+			marking_batch.applyTo(executable_net_target);
+		} catch (RuntimeException e) {
+			end();
+			throw e;
+		}
+		// All transitions are evaluated below - including the new marking.
+		marking_changed = false;
 		/*if ( (realCurrentTime - realStartTime) <  (pnCurrentTime - pnStartTime) ){
 			try {
 				semaphore.release();
@@ -56,4 +99,54 @@ public class FFWTimePetriNetRunner extends RealTimePetriNetRunner {
 		end(); 	
 	}
 
+	/**
+	 * Hash of the current marking (same hash as CompiledPetriNet.getMarkingHash).
+	 */
+	public int getMarkingHash() {
+		int hash = 0;
+		for (Place place : executablePetriNet.getPlaces()) {
+			hash += place.getNumberOfTokensStored() * CompiledPetriNet.markingHashFactor(place.getId());
+		}
+		return hash;
+	}
+
+	@Override
+	public void stepPetriNetSynchronized(int duration) {
+		if (!marking_batch.isEmpty()) {
+			start();
+			try {
+				marking_batch.applyTo(executable_net_target);
+			} finally {
+				end();
+			}
+		}
+		super.stepPetriNetSynchronized(duration);
+		// Stepped by PIPE - the next firing time is not known.
+		marking_changed = true;
+	}
+
+	@Override
+	public void markPlace(String placeId, String token, int count) throws InterruptedException {
+		super.markPlace(placeId, token, count);
+		marking_changed = true;
+	}
+
+	@Override
+	public void markPlaceBatched(String placeId, String token, int count) {
+		marking_batch.add(placeId, token, count);
+	}
+
+	/*
+	 * Set the tokens of a place of the executable net - like markPlace, but the
+	 * caller has to hold the semaphore (start()).
+	 */
+	private void setTokenCount(String placeId, String token, int count) {
+		try {
+			executablePetriNet.getComponent(placeId, Place.class).setTokenCount(token, count);
+		} catch (PetriNetComponentNotFoundException e) {
+			throw new IllegalArgumentException("Unknown place " + placeId, e);
+		}
+		marking_changed = true;
+	}
+
 }
@@ -0,0 +1,25 @@
+package pipe_project;
+
+/**
+ * Consumer of firing events - called from the consumer thread of a FiringEventPipeline.
+ */
+public interface FiringConsumer {
+
+	public void onFiring(int transition, String transitionName, long pnTime, long realTime, int markingHash);
+
+	/**
+	 * Called when there are no more firings for the moment - buffered output
+	 * should be written now.
+	 */
+	public default void flush() {
+	}
+
+	/**
+	 * True if the consumer uses the marking hash of the firings - the runners only
+	 * compute the hash when a consumer of the pipeline needs it (otherwise it is 0).
+	 */
+	public default boolean needsMarkingHash() {
+		return false;
+	}
+
+}
@@ -0,0 +1,151 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline for firing events of Petri net runners.
+ *
+ * Runners publish compact firing records into a FiringRecordBuffer - transitions are
+ * only referenced by an index which is registered once per transition name.
+ * A consumer thread of the pipeline takes the records out and hands them to the
+ * registered FiringConsumers (console logging, trace files, statistics ...),
+ * so the Petri net step does not wait for any I/O.
+ */
+public class FiringEventPipeline {
+
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	// Time the consumer thread sleeps when there are no records.
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final FiringRecordBuffer buffer;
+	private final List<FiringConsumer> consumers = new CopyOnWriteArrayList<>();
+	// Registered transition names and their indices.
+	private final ConcurrentHashMap<String, Integer> transition_index = new ConcurrentHashMap<>();
+	private final List<String> transition_names = new ArrayList<>();
+	private final FiringRecordBuffer.RecordHandler dispatcher = this::dispatch;
+	private Thread consumer_thread;
+	private volatile boolean running = false;
+	// Set when a consumer uses the marking hashes of the firings.
+	private volatile boolean marking_hash_needed = false;
+
+	public FiringEventPipeline() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public FiringEventPipeline(int capacity) {
+		buffer = new FiringRecordBuffer(capacity);
+	}
+
+	public void addConsumer(FiringConsumer consumer) {
+		consumers.add(consumer);
+		if (consumer.needsMarkingHash()) {
+			marking_hash_needed = true;
+		}
+	}
+
+	/**
+	 * True if a consumer uses the marking hash - publishers can pass 0 otherwise.
+	 */
+	public boolean needsMarkingHash() {
+		return marking_hash_needed;
+	}
+
+	/**
+	 * Index of a transition for publishing its firings.
+	 * The same name always gets the same index.
+	 */
+	public int registerTransition(String name) {
+		Integer index = transition_index.get(name);
+		if (index != null) {
+			return index;
+		}
+		synchronized (transition_names) {
+			index = transition_index.get(name);
+			if (index == null) {
+				index = transition_names.size();
+				transition_names.add(name);
+				transition_index.put(name, index);
+			}
+			return index;
+		}
+	}
+
+	public String getTransitionName(int index) {
+		synchronized (transition_names) {
+			return transition_names.get(index);
+		}
+	}
+
+	/**
+	 * Publish a firing - does not block.
+	 *
+	 * @param transition Index of the transition (see registerTransition)
+	 * @param pnTime Time of the Petri net in ms
+	 * @param realTime Real time in ms
+	 * @param markingHash Hash of the marking after the firing (see CompiledPetriNet.getMarkingHash)
+	 */
+	public void publish(int transition, long pnTime, long realTime, int markingHash) {
+		buffer.publish(transition, pnTime, realTime, markingHash);
+	}
+
+	/**
+	 * Start the consumer thread (a daemon thread).
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		consumer_thread = new Thread(this::consume, "FiringEventPipeline");
+		consumer_thread.setDaemon(true);
+		consumer_thread.start();
+	}
+
+	/**
+	 * Stop the consumer thread after handing out all published records.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(consumer_thread);
+		consumer_thread.join();
+	}
+
+	/*
+	 * Number of firings which were dropped because the consumers could not keep up.
+	 */
+	public long getDroppedFirings() {
+		return buffer.getDroppedRecords();
+	}
+
+	private void consume() {
+		while (running) {
+			if (buffer.drain(dispatcher) == 0) {
+				flushConsumers();
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+		buffer.drain(dispatcher);
+		flushConsumers();
+	}
+
+	private void dispatch(int transition, long pnTime, long realTime, int markingHash) {
+		String name = getTransitionName(transition);
+		for (FiringConsumer consumer : consumers) {
+			consumer.onFiring(transition, name, pnTime, realTime, markingHash);
+		}
+	}
+
+	private void flushConsumers() {
+		for (FiringConsumer consumer : consumers) {
+			consumer.flush();
+		}
+	}
+}
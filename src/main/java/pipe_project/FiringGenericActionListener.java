@@ -3,28 +3,52 @@ package pipe_project;
 import java.beans.PropertyChangeEvent;
 
 import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.Map;
 
 import uk.ac.imperial.pipe.runner.Firing;
 import uk.ac.imperial.pipe.runner.PetriNetRunner;
 import uk.ac.imperial.pipe.runner.RealTimePetriNetRunner;
 
+/**
+ * Listens for firings of a PIPE runner and publishes them into a FiringEventPipeline.
+ *
+ * The listener is called on the runner thread - it only looks up the index of the
+ * transition and publishes a record, printing is done by the consumers of the pipeline.
+ * The hash of the marking (a pass over all places of the net) is only computed when
+ * a consumer of the pipeline records it.
+ */
 public class FiringGenericActionListener implements PropertyChangeListener {
 
 	public static String[] genericActionTransitionKeywords = {"START", "FINISH"};
     public static String[] actionTransitionKeywords = {"START", "GRASP", "MOVE", "PLACE", "FINISH"};
 
-	public FiringGenericActionListener() {
+    private final FiringEventPipeline pipeline;
+    // Index in the pipeline by the transition name of the firing.
+    private final Map<String, Integer> transition_index = new HashMap<>();
+
+	public FiringGenericActionListener(FiringEventPipeline pipeline) {
+		this.pipeline = pipeline;
 		System.out.println("Created listener for firings");
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void propertyChange(PropertyChangeEvent event) {
 		if (event.getPropertyName().equals(PetriNetRunner.UPDATED_STATE)) {
 			if (event.getNewValue() instanceof Firing) {
-				String[] transition_name = ((Firing) event.getNewValue()).transition.split("\\.");
-				System.out.println("Fired transition " + transition_name[0] + 
-						" - time: " + ( (RealTimePetriNetRunner) event.getSource()).getPNTimeSinceStart() + " / " + ( (RealTimePetriNetRunner) event.getSource()).getRealTimeSinceStart() );
+				String transition = ((Firing) event.getNewValue()).transition;
+				Integer index = transition_index.get(transition);
+				if (index == null) {
+					// Executable nets prefix the ids of cloned transitions,
+					// only the first part of the name is logged.
+					int dot = transition.indexOf('.');
+					index = pipeline.registerTransition(dot < 0 ? transition : transition.substring(0, dot));
+					transition_index.put(transition, index);
+				}
+				RealTimePetriNetRunner runner = (RealTimePetriNetRunner) event.getSource();
+				int markingHash = (pipeline.needsMarkingHash() && (runner instanceof FFWTimePetriNetRunner)) ?
+						((FFWTimePetriNetRunner) runner).getMarkingHash() : 0;
+				pipeline.publish(index, runner.getPNTimeSinceStart(), runner.getRealTimeSinceStart(), markingHash);
 			}
 		}
 	}
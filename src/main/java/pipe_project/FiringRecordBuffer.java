@@ -0,0 +1,104 @@
+package pipe_project;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring buffer of firing records (transition index, PN time, real time,
+ * hash of the marking after the firing).
+ *
+ * Runners publish records from their threads, one consumer thread takes them out.
+ * Every slot carries a sequence number telling whether it can be written or read, so
+ * neither side ever waits for a lock. When the buffer is full, records are dropped
+ * (and counted) instead of stalling the Petri net.
+ */
+public class FiringRecordBuffer {
+
+	/**
+	 * Receives the records taken out of the buffer.
+	 */
+	public interface RecordHandler {
+		public void handle(int transition, long pnTime, long realTime, int markingHash);
+	}
+
+	private final int mask;
+	private final int[] transitions;
+	private final long[] pn_times;
+	private final long[] real_times;
+	private final int[] marking_hashes;
+	// Sequence per slot: equal to the write position when the slot is free,
+	// write position + 1 when it holds a record.
+	private final AtomicLongArray sequence;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// Only used by the consumer thread.
+	private long head = 0;
+
+	/**
+	 * @param capacity Number of records (rounded up to a power of two)
+	 */
+	public FiringRecordBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		transitions = new int[size];
+		pn_times = new long[size];
+		real_times = new long[size];
+		marking_hashes = new int[size];
+		sequence = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Publish a record (can be called from several threads).
+	 *
+	 * @return false if the buffer was full and the record was dropped
+	 */
+	public boolean publish(int transition, long pnTime, long realTime, int markingHash) {
+		while (true) {
+			long pos = tail.get();
+			int slot = (int) pos & mask;
+			long seq = sequence.get(slot);
+			if (seq == pos) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					transitions[slot] = transition;
+					pn_times[slot] = pnTime;
+					real_times[slot] = realTime;
+					marking_hashes[slot] = markingHash;
+					sequence.lazySet(slot, pos + 1);
+					return true;
+				}
+			} else if (seq < pos) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Take out all available records (only called from the consumer thread).
+	 *
+	 * @return Number of records handled
+	 */
+	public int drain(RecordHandler handler) {
+		int count = 0;
+		while (true) {
+			int slot = (int) head & mask;
+			if (sequence.get(slot) != head + 1) {
+				return count;
+			}
+			handler.handle(transitions[slot], pn_times[slot], real_times[slot], marking_hashes[slot]);
+			sequence.lazySet(slot, head + mask + 1);
+			head++;
+			count++;
+		}
+	}
+
+	/*
+	 * Number of records dropped because the buffer was full.
+	 */
+	public long getDroppedRecords() {
+		return dropped.get();
+	}
+}
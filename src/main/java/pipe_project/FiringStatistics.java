@@ -0,0 +1,29 @@
+package pipe_project;
+
+import java.util.Arrays;
+
+/**
+ * Counts the firings per transition (metrics consumer of a FiringEventPipeline).
+ */
+public class FiringStatistics implements FiringConsumer {
+
+	private long[] counts = new long[16];
+	private long total = 0;
+
+	@Override
+	public synchronized void onFiring(int transition, String transitionName, long pnTime, long realTime, int markingHash) {
+		if (transition >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(transition + 1, counts.length * 2));
+		}
+		counts[transition]++;
+		total++;
+	}
+
+	public synchronized long getNumberOfFirings(int transition) {
+		return (transition < counts.length) ? counts[transition] : 0;
+	}
+
+	public synchronized long getTotalNumberOfFirings() {
+		return total;
+	}
+}
@@ -0,0 +1,159 @@
+package pipe_project;
+
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a trace written by the FiringTraceRecorder.
+ *
+ * Iterating over the reader gives the recorded firings in the order they were recorded.
+ * The trace is read through memory mapped regions as well.
+ */
+public class FiringTraceReader implements Iterable<FiringTraceReader.Record>, Closeable {
+
+	static final int MAGIC = 0x504E5452; // "PNTR"
+	static final int VERSION = 1;
+	// transition (int), PN time (long), real time (long), marking hash (int)
+	static final int RECORD_SIZE = 4 + 8 + 8 + 4;
+	// magic, version, record size, reserved (ints) and the number of records (long)
+	static final int HEADER_SIZE = 4 * 4 + 8;
+	static final int COUNT_OFFSET = 4 * 4;
+	// Records per mapped region when reading.
+	private static final long RECORDS_PER_REGION = 1L << 20;
+
+	/**
+	 * A single recorded firing.
+	 */
+	public static class Record {
+		public final int transition;
+		public final String transitionName;
+		public final long pnTime;
+		public final long realTime;
+		public final int markingHash;
+
+		Record(int transition, String transitionName, long pnTime, long realTime, int markingHash) {
+			this.transition = transition;
+			this.transitionName = transitionName;
+			this.pnTime = pnTime;
+			this.realTime = realTime;
+			this.markingHash = markingHash;
+		}
+
+		@Override
+		public String toString() {
+			return transitionName + " - time: " + pnTime + " / " + realTime + " - marking: " + markingHash;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long number_of_records;
+	private final Map<Integer, String> names = new HashMap<>();
+
+	public FiringTraceReader(String traceFile) throws IOException {
+		file = new RandomAccessFile(traceFile, "r");
+		channel = file.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if ((header.getInt() != MAGIC) || (header.getInt() != VERSION) || (header.getInt() != RECORD_SIZE)) {
+			close();
+			throw new IOException(traceFile + " is not a firing trace");
+		}
+		// Records might be missing at the end of the file when the recorder was not closed.
+		long recorded = header.getLong(COUNT_OFFSET);
+		number_of_records = Math.min(recorded, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+		readNames(namesFile(traceFile));
+	}
+
+	static String namesFile(String traceFile) {
+		return traceFile + ".names";
+	}
+
+	private void readNames(String namesFile) throws IOException {
+		if (!new File(namesFile).exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(namesFile)))) {
+			while (true) {
+				int index = in.readInt();
+				names.put(index, in.readUTF());
+			}
+		} catch (EOFException e) {
+			// End of the string table (an incomplete last entry is ignored).
+		}
+	}
+
+	public long getNumberOfRecords() {
+		return number_of_records;
+	}
+
+	/*
+	 * Name of a transition - null if it is not in the string table.
+	 */
+	public String getTransitionName(int transition) {
+		return names.get(transition);
+	}
+
+	@Override
+	public Iterator<Record> iterator() {
+		return new Iterator<Record>() {
+			private long next = 0;
+			private MappedByteBuffer region;
+
+			@Override
+			public boolean hasNext() {
+				return next < number_of_records;
+			}
+
+			@Override
+			public Record next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if ((region == null) || !region.hasRemaining()) {
+					long records = Math.min(RECORDS_PER_REGION, number_of_records - next);
+					try {
+						region = channel.map(FileChannel.MapMode.READ_ONLY,
+								HEADER_SIZE + next * RECORD_SIZE, records * RECORD_SIZE);
+					} catch (IOException e) {
+						throw new IllegalStateException("Trace could not be read", e);
+					}
+				}
+				next++;
+				int transition = region.getInt();
+				long pnTime = region.getLong();
+				long realTime = region.getLong();
+				int markingHash = region.getInt();
+				return new Record(transition, names.get(transition), pnTime, realTime, markingHash);
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	/**
+	 * Print a trace: call with the name of the trace file.
+	 */
+	public static void main(String[] args) throws IOException {
+		try (FiringTraceReader reader = new FiringTraceReader(args[0])) {
+			for (Record record : reader) {
+				System.out.println(record);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package pipe_project;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Records firings into a binary trace file (a consumer of a FiringEventPipeline).
+ *
+ * Each firing is a fixed-width record of FiringTraceReader.RECORD_SIZE bytes:
+ * transition index (int), PN time (long), real time (long), marking hash (int).
+ * The trace file is written through memory mapped regions which are mapped one after
+ * the other while the trace grows. The header of the file holds the number of
+ * records written so far, so a trace can be read even when the recording was
+ * not closed properly.
+ *
+ * The names of the transitions are written into a string table next to the trace
+ * (file name + ".names") as pairs of index and name when a transition fires first.
+ *
+ * To record the firings of a FFWTimePetriNetRunner add a FiringGenericActionListener
+ * for a pipeline to the runner and the recorder as consumer to the pipeline.
+ */
+public class FiringTraceRecorder implements FiringConsumer, Closeable {
+
+	// Size of a mapped region of the trace (a multiple of the record size) - the file
+	// grows by this size, close() cuts it to the records written.
+	private static final long REGION_SIZE = FiringTraceReader.RECORD_SIZE * (1L << 16);
+
+	private final String trace_file;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private MappedByteBuffer region;
+	private long region_start;
+	private long number_of_records = 0;
+	// The string table - and which transitions are already in there.
+	private final DataOutputStream names;
+	private boolean[] named = new boolean[16];
+
+	public FiringTraceRecorder(String traceFile) throws IOException {
+		this.trace_file = traceFile;
+		this.file = new RandomAccessFile(traceFile, "rw");
+		file.setLength(0);
+		this.channel = file.getChannel();
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FiringTraceReader.HEADER_SIZE);
+		header.putInt(FiringTraceReader.MAGIC);
+		header.putInt(FiringTraceReader.VERSION);
+		header.putInt(FiringTraceReader.RECORD_SIZE);
+		header.putInt(0);
+		header.putLong(0);
+		mapRegion(FiringTraceReader.HEADER_SIZE);
+		this.names = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(FiringTraceReader.namesFile(traceFile))));
+	}
+
+	private void mapRegion(long start) throws IOException {
+		region_start = start;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+	}
+
+	@Override
+	public synchronized void onFiring(int transition, String transitionName, long pnTime, long realTime, int markingHash) {
+		try {
+			if (!region.hasRemaining()) {
+				mapRegion(region_start + REGION_SIZE);
+			}
+			if (transition >= named.length) {
+				named = Arrays.copyOf(named, Math.max(transition + 1, named.length * 2));
+			}
+			if (!named[transition]) {
+				names.writeInt(transition);
+				names.writeUTF(transitionName);
+				named[transition] = true;
+			}
+			region.putInt(transition);
+			region.putLong(pnTime);
+			region.putLong(realTime);
+			region.putInt(markingHash);
+			number_of_records++;
+			header.putLong(FiringTraceReader.COUNT_OFFSET, number_of_records);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean needsMarkingHash() {
+		return true;
+	}
+
+	@Override
+	public synchronized void flush() {
+		try {
+			names.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized long getNumberOfRecords() {
+		return number_of_records;
+	}
+
+	public String getTraceFile() {
+		return trace_file;
+	}
+
+	/**
+	 * Write everything and cut the trace file to the recorded size
+	 * (the file is closed in any case).
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (region == null) {
+			return;
+		}
+		MappedByteBuffer last = region;
+		region = null;
+		try {
+			names.close();
+			last.force();
+			header.force();
+			try {
+				file.setLength(FiringTraceReader.HEADER_SIZE + number_of_records * FiringTraceReader.RECORD_SIZE);
+			} catch (IOException e) {
+				// The mapped regions can not be unmapped, so some platforms (Windows) refuse
+				// to cut the file - the reader takes the number of records from the header.
+			}
+		} finally {
+			// Closes the channel as well.
+			file.close();
+		}
+	}
+}
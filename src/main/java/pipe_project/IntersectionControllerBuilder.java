@@ -0,0 +1,92 @@
+package pipe_project;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.ColoredToken;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import traffic_sim.TrafficLight;
+
+/**
+ * Builds one Petri net controlling the traffic lights of many intersections,
+ * each intersection an instance of an IntersectionTemplate:
+ * <pre>
+ * PetriNet net = new IntersectionControllerBuilder(template)
+ *         .addIntersection("Main", southLight, westLight)
+ *         .addGrid(lightsOfTheCity)
+ *         .build();
+ * </pre>
+ * The intersections are collected first and the net is created by build().
+ */
+public class IntersectionControllerBuilder {
+
+	private final IntersectionTemplate template;
+	private final List<String> ids = new ArrayList<>();
+	private final List<TrafficLight[]> lights = new ArrayList<>();
+	private final Set<String> used_ids = new HashSet<>();
+	private final List<IntersectionTemplate.Instance> instances = new ArrayList<>();
+
+	public IntersectionControllerBuilder(IntersectionTemplate template) {
+		this.template = template;
+	}
+
+	/**
+	 * Add an intersection.
+	 *
+	 * @param id Id of the intersection (letters and digits, unique in the net)
+	 * @param intersectionLights Traffic lights of the intersection in the order of their phases
+	 */
+	public IntersectionControllerBuilder addIntersection(String id, TrafficLight... intersectionLights) {
+		IntersectionTemplate.checkId(id);
+		if (!used_ids.add(id)) {
+			throw new IllegalArgumentException("Intersection " + id + " was already added");
+		}
+		ids.add(id);
+		lights.add(intersectionLights.clone());
+		return this;
+	}
+
+	/**
+	 * Add a grid of intersections - the intersection in row r and column c gets the id
+	 * "R&lt;r&gt;C&lt;c&gt;". Empty entries (null or no lights) are skipped.
+	 *
+	 * @param grid Traffic lights of the intersections by row and column
+	 */
+	public IntersectionControllerBuilder addGrid(TrafficLight[][][] grid) {
+		for (int row = 0; row < grid.length; row++) {
+			for (int column = 0; column < grid[row].length; column++) {
+				TrafficLight[] intersectionLights = grid[row][column];
+				if (intersectionLights != null && intersectionLights.length > 0) {
+					addIntersection("R" + row + "C" + column, intersectionLights);
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Create the net with the controllers of all added intersections.
+	 */
+	public PetriNet build() throws PetriNetComponentException {
+		PetriNet net = new PetriNet();
+		net.addToken(new ColoredToken(IntersectionTemplate.TOKEN, Color.BLACK));
+		instances.clear();
+		for (int i = 0; i < ids.size(); i++) {
+			instances.add(template.instantiate(net, ids.get(i), lights.get(i)));
+		}
+		return net;
+	}
+
+	/**
+	 * The intersections of the last built net (with the ids of their places and transitions).
+	 */
+	public List<IntersectionTemplate.Instance> getIntersections() {
+		return Collections.unmodifiableList(instances);
+	}
+}
@@ -0,0 +1,168 @@
+package pipe_project;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.*;
+
+import traffic_sim.TrafficLight;
+
+/**
+ * Template of the Petri net controlling the traffic lights of one intersection.
+ *
+ * The approaches (traffic lights) of an intersection get green one after the other:
+ * each light has the subnet Green -> Yellow -> Red -> (Yellow and) Green, the phase
+ * places isPhase0 ... isPhaseN are shared by the lights of the intersection -
+ * when light i turns red, the phase of light i+1 starts.
+ *
+ * The template can be instantiated any number of times into one net. The ids of the
+ * places and transitions are generated from the id of the intersection, the element
+ * and the number of the approach ("Main_turnGreen1") - they do not depend on the
+ * simulation objects and are the same in every run.
+ */
+public class IntersectionTemplate {
+
+	// Ids of intersections (no underscore - it separates the parts of the generated ids).
+	private static final Pattern INTERSECTION_ID = Pattern.compile("[A-Za-z][A-Za-z0-9]*");
+	// Token of the controller nets.
+	static final String TOKEN = "Default";
+
+	private final int green_time, yellow_time, start_phase_time, yellow_red_time;
+	private final Map<String, String> weights = new HashMap<>();
+
+	/**
+	 * @param greenTime Delay of turning yellow after green (ms)
+	 * @param yellowTime Delay of turning red after yellow (ms)
+	 * @param startPhaseTime Delay of starting the phase of the next light (ms)
+	 * @param yellowRedTime Delay of turning green after red and yellow (ms)
+	 */
+	public IntersectionTemplate(int greenTime, int yellowTime, int startPhaseTime, int yellowRedTime) {
+		this.green_time = greenTime;
+		this.yellow_time = yellowTime;
+		this.start_phase_time = startPhaseTime;
+		this.yellow_red_time = yellowRedTime;
+		weights.put(TOKEN, "1");
+	}
+
+	/**
+	 * One instantiation of the template: the ids of its places and transitions.
+	 */
+	public static final class Instance {
+		private final String id;
+		private final List<String> place_ids = new ArrayList<>();
+		private final List<String> transition_ids = new ArrayList<>();
+
+		private Instance(String id) {
+			this.id = id;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public List<String> getPlaceIds() {
+			return Collections.unmodifiableList(place_ids);
+		}
+
+		public List<String> getTransitionIds() {
+			return Collections.unmodifiableList(transition_ids);
+		}
+	}
+
+	/**
+	 * Id of an element of an intersection, e.g. elementId("Main", "Green", 1) is "Main_Green1".
+	 */
+	public static String elementId(String intersection, String element, int approach) {
+		return intersection + "_" + element + approach;
+	}
+
+	/**
+	 * Throws an IllegalArgumentException if the id can not be used for an intersection.
+	 */
+	public static void checkId(String id) {
+		if (id == null || !INTERSECTION_ID.matcher(id).matches()) {
+			throw new IllegalArgumentException("Intersection id \"" + id
+					+ "\" has to start with a letter and contain only letters and digits");
+		}
+	}
+
+	/**
+	 * Add the controller of an intersection to the net (the net has to contain the
+	 * token "Default"). The phase of the first light starts first.
+	 *
+	 * @param net The net
+	 * @param id Id of the intersection (letters and digits)
+	 * @param lights Traffic lights of the intersection in the order of their phases
+	 */
+	public Instance instantiate(PetriNet net, String id, TrafficLight... lights) throws PetriNetComponentException {
+		checkId(id);
+		if (lights.length == 0) {
+			throw new IllegalArgumentException("Intersection " + id + " needs at least one traffic light");
+		}
+		Instance instance = new Instance(id);
+		int approaches = lights.length;
+
+		// Phase places shared by the lights and the transitions starting the phases.
+		DiscretePlace[] isPhase = new DiscretePlace[approaches];
+		DiscreteExternalActionCallTransition[] turnPhase = new DiscreteExternalActionCallTransition[approaches];
+		for (int i = 0; i < approaches; i++) {
+			TrafficLight light = lights[i];
+			turnPhase[i] = addTransition(net, instance, elementId(id, "turnPhase", i), start_phase_time,
+					() -> light.setTrafficLightGreen(Color.YELLOW));
+		}
+		for (int i = 0; i < approaches; i++) {
+			isPhase[i] = addPlace(net, instance, elementId(id, "isPhase", i));
+			net.addArc(new InboundNormalArc(isPhase[i], turnPhase[i], weights));
+		}
+		isPhase[0].incrementTokenCount(TOKEN);
+
+		for (int i = 0; i < approaches; i++) {
+			TrafficLight light = lights[i];
+			DiscretePlace isGreen = addPlace(net, instance, elementId(id, "Green", i));
+			DiscretePlace isYellow = addPlace(net, instance, elementId(id, "Yellow", i));
+			DiscretePlace isRed = addPlace(net, instance, elementId(id, "Red", i));
+			isRed.incrementTokenCount(TOKEN);
+			DiscreteExternalActionCallTransition turnRed = addTransition(net, instance,
+					elementId(id, "turnRed", i), yellow_time, () -> light.setTrafficLightGreen(Color.RED));
+			DiscreteExternalActionCallTransition turnYellow = addTransition(net, instance,
+					elementId(id, "turnYellow", i), green_time, () -> light.setTrafficLightGreen(Color.YELLOW));
+			DiscreteExternalActionCallTransition turnGreen = addTransition(net, instance,
+					elementId(id, "turnGreen", i), yellow_red_time, () -> light.setTrafficLightGreen(Color.GREEN));
+			net.addArc(new InboundNormalArc(isGreen, turnYellow, weights));
+			net.addArc(new OutboundNormalArc(turnYellow, isYellow, weights));
+			net.addArc(new InboundNormalArc(isYellow, turnRed, weights));
+			net.addArc(new OutboundNormalArc(turnRed, isRed, weights));
+			net.addArc(new InboundNormalArc(isRed, turnGreen, weights));
+			net.addArc(new InboundNormalArc(isYellow, turnGreen, weights));
+			net.addArc(new OutboundNormalArc(turnGreen, isGreen, weights));
+			net.addArc(new OutboundNormalArc(turnPhase[i], isYellow, weights));
+			net.addArc(new OutboundNormalArc(turnRed, isPhase[(i + 1) % approaches], weights));
+			net.addArc(new InboundInhibitorArc(isRed, turnRed));
+		}
+		return instance;
+	}
+
+	private static DiscretePlace addPlace(PetriNet net, Instance instance, String placeId) {
+		DiscretePlace place = new DiscretePlace(placeId, placeId);
+		net.addPlace(place);
+		instance.place_ids.add(placeId);
+		return place;
+	}
+
+	private static DiscreteExternalActionCallTransition addTransition(PetriNet net, Instance instance,
+			String transitionId, int delay, ExternalActionInterface action) {
+		DiscreteExternalActionCallTransition transition =
+				new DiscreteExternalActionCallTransition(transitionId, transitionId, action);
+		transition.setTimed(true);
+		transition.setDelay(delay);
+		net.addTransition(transition);
+		instance.transition_ids.add(transitionId);
+		return transition;
+	}
+}
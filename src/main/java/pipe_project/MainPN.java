@@ -1,8 +1,13 @@
 package pipe_project;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.io.IOException;
+import java.io.PrintWriter;
 
 import uk.ac.imperial.pipe.runner.RealTimePetriNetRunner;
 import uk.ac.imperial.pipe.dsl.APetriNet;
@@ -54,10 +59,35 @@ public class MainPN {
 	private static final int TIME_YELLOW = 500;
 	private static final int TIME_START_PHASE = 1000;
 	private static final int TIME_YELLOW_RED = 500;
-	public static FFWTimePetriNetRunner runner;
+	// Simulated time in seconds for a headless run (if not given as argument).
+	private static final double HEADLESS_HORIZON = 3600.;
 
 	// Call with: mvn exec:java -Dexec.args="false"
+	// or for an evaluation run without any view: mvn exec:java -Dexec.args="headless 3600"
+	// (add "compiled" to run the Petri net with the CompiledPetriNetRunner,
+	// "partitioned" to run its independent subnets in parallel with the PartitionedPetriNetRunner;
+	// a headless run is reproduced with -Dsim.seed=<seed>, its random decisions are
+	// recorded with -Dsim.record=<file> and replayed with -Dsim.replay=<file>;
+	// -Dsim.demand=<file> sets the demand of all producers from an arrival profile)
     public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("headless")) {
+			double horizon = HEADLESS_HORIZON;
+			if (args.length > 1) {
+				try {
+					horizon = Double.parseDouble(args[1]);
+				} catch (NumberFormatException e) {
+					System.err.println("Argument " + args[1] + " must be a number - the simulated time in seconds.");
+				}
+			}
+			boolean compiled = (args.length > 2) && args[2].equals("compiled");
+			boolean partitioned = (args.length > 2) && args[2].equals("partitioned");
+			try {
+				System.out.println(runHeadless(horizon, compiled, partitioned));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
      	// 1. Construct main window showing traffic situation (and exit button)
 		final TrafficController controller = new TrafficController();
 		boolean realTimeArg = true;
@@ -69,11 +99,22 @@ public class MainPN {
     		}
     	}
 		controller.setRealTimeControlFlag( realTimeArg );
+		// Frames per second of the view (-Dview.fps=<rate>, 0 switches the view off).
+		String frameRate = System.getProperty("view.fps");
+		if (frameRate != null) {
+			try {
+				controller.setFrameRate(Double.parseDouble(frameRate));
+			} catch (NumberFormatException e) {
+				System.err.println("view.fps " + frameRate + " must be a number - the frames per second of the view.");
+			}
+		}
 		
     	// 2. Construct traffic simulation scene
 
         try {
-			PetriNet currentPN = createEasyIntersection(controller, 100, 100);
+			List<Drawable> drawables = new ArrayList<>();
+			PetriNet currentPN = createEasyIntersection(drawables, 100, 100);
+			controller.getView().getTrafficView().addAllDrawables(drawables);
         	// 3. Build the simple Petri network controlling traffic:
         	// when there are 3 or more cars in front of the traffic light
         	// (this is tested in the TrafficLightObserver above)
@@ -90,8 +131,24 @@ public class MainPN {
    			}
 
 	    	// Start running of the PN
-    		runner = new FFWTimePetriNetRunner( currentPN );
-			FiringGenericActionListener firedTrans = new FiringGenericActionListener();
+    		// (the runner is registered in the world, observers mark places through it)
+    		FFWTimePetriNetRunner runner = new FFWTimePetriNetRunner( currentPN );
+    		controller.getWorld().setPetriNetRunner(runner);
+			// Firings are printed on the thread of the pipeline, not by the runner.
+			FiringEventPipeline firings = new FiringEventPipeline();
+			firings.addConsumer(new ConsoleFiringLogger());
+			// A binary trace of the firings is recorded when started with -Dpn.trace=<file>
+			// (read it with FiringTraceReader).
+			String traceFile = System.getProperty("pn.trace");
+			FiringTraceRecorder recorder = (traceFile != null) ? new FiringTraceRecorder(traceFile) : null;
+			if (recorder != null) {
+				firings.addConsumer(recorder);
+			}
+			firings.start();
+			// The application ends when the window is closed - the remaining firings
+			// are handed out and the trace is completed then.
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> closeFirings(firings, recorder)));
+			FiringGenericActionListener firedTrans = new FiringGenericActionListener(firings);
 			runner.addPropertyChangeListener(firedTrans);
 
 			runner.startRealTimeClock();
@@ -109,8 +166,147 @@ public class MainPN {
     }
 
 
-    private static PetriNet createEasyIntersection(
-    		TrafficController controller, int xCoordinate, int yCoordinate) throws PetriNetComponentException {
+    /*
+     * Stop the pipeline of the firings and close the trace (if one is recorded).
+     * Firings dropped by the pipeline are missing in the trace - this is reported.
+     */
+    private static void closeFirings(FiringEventPipeline firings, FiringTraceRecorder recorder) {
+    	try {
+    		firings.stop();
+    		if (recorder != null) {
+    			recorder.close();
+    			long dropped = firings.getDroppedFirings();
+    			if (dropped > 0) {
+    				System.err.println("Firing trace " + recorder.getTraceFile() + " is incomplete: "
+    						+ dropped + " firings were dropped.");
+    			}
+    		}
+    	} catch (InterruptedException | IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+
+    /**
+     * Run the easy intersection scene without any view for horizon seconds
+     * of simulated time (the Petri net is stepped in fast forward mode).
+     *
+     * Each call runs in its own SimulationWorld - therefore independent runs can be
+     * executed concurrently from different threads.
+     *
+     * @param horizon Simulated time in seconds
+     * @return The results of the run
+     */
+    public static SimulationResult runHeadless(double horizon) throws PetriNetComponentException {
+		return runHeadless(horizon, false);
+    }
+
+    /**
+     * Run the easy intersection scene without any view - optionally with the
+     * Petri net compiled and run by a CompiledPetriNetRunner instead of PIPE.
+     *
+     * @param horizon Simulated time in seconds
+     * @param compiled Use the CompiledPetriNetRunner
+     * @return The results of the run
+     */
+    public static SimulationResult runHeadless(double horizon, boolean compiled) throws PetriNetComponentException {
+		return runHeadless(horizon, compiled, false);
+    }
+
+    /**
+     * Run the easy intersection scene without any view - optionally with the
+     * Petri net compiled, or split into its independent subnets which are run
+     * in parallel by a PartitionedPetriNetRunner.
+     *
+     * @param horizon Simulated time in seconds
+     * @param compiled Use the CompiledPetriNetRunner
+     * @param partitioned Use the PartitionedPetriNetRunner (without interface places)
+     * @return The results of the run
+     */
+    public static SimulationResult runHeadless(double horizon, boolean compiled, boolean partitioned)
+    		throws PetriNetComponentException {
+		System.setProperty("java.awt.headless", "true");
+		SimulationWorld world = new SimulationWorld();
+		String seed = System.getProperty("sim.seed");
+		if (seed != null) {
+			world.setSeed(Long.parseLong(seed));
+		}
+		String recordFile = System.getProperty("sim.record");
+		String replayFile = System.getProperty("sim.replay");
+		SimulationRecording recording = null;
+		if (replayFile != null) {
+			try {
+				world.replay(SimulationRecording.load(replayFile));
+			} catch (IOException e) {
+				System.err.println("Recording " + replayFile + " could not be read: " + e);
+			}
+		} else if (recordFile != null) {
+			recording = world.startRecording();
+		}
+		// Demand of all producers from a profile file (-Dsim.demand=<file>, see ArrivalProfile).
+		String demandFile = System.getProperty("sim.demand");
+		if (demandFile != null) {
+			try {
+				world.setArrivalProfile(ArrivalProfile.load(demandFile));
+			} catch (IOException e) {
+				System.err.println("Demand profile " + demandFile + " could not be read: " + e);
+			}
+		}
+		System.out.println("Seed of the simulation: " + world.getSeed());
+		world.makeCurrent();
+		try {
+			// The drawables are only collected, there is nobody to show them.
+			PetriNet currentPN = createEasyIntersection(new ArrayList<Drawable>(), 100, 100);
+			if (partitioned) {
+				world.setPetriNetRunner(new PartitionedPetriNetRunner(currentPN,
+						Collections.<String>emptyList()));
+			} else if (compiled) {
+				world.setPetriNetRunner(new CompiledPetriNetRunner(currentPN));
+			} else {
+				FFWTimePetriNetRunner runner = new FFWTimePetriNetRunner( currentPN );
+				world.setPetriNetRunner(runner);
+				runner.startRealTimeClock();
+			}
+			// Same result as updating every object in every step, but quiet
+			// stretches of the simulation are skipped.
+			HeadlessSimulation simulation = new HeadlessSimulation(world);
+			simulation.setUpdateMode(HeadlessSimulation.UpdateMode.EVENT_DRIVEN);
+			SimulationResult result = simulation.run(horizon);
+			// Travel time histograms of all evaluated consumers (-Dsim.stats=<file>).
+			String statsFile = System.getProperty("sim.stats");
+			if (statsFile != null) {
+				try (PrintWriter out = new PrintWriter(statsFile)) {
+					for (SimulationResult.ConsumerStatistics stats : result.getConsumerStatistics()) {
+						stats.getStatistics().export(stats.getName(), out);
+					}
+				} catch (IOException e) {
+					System.err.println("Statistics " + statsFile + " could not be written: " + e);
+				}
+			}
+			if (recording != null) {
+				try {
+					recording.save(recordFile);
+				} catch (IOException e) {
+					System.err.println("Recording " + recordFile + " could not be written: " + e);
+				}
+			}
+			return result;
+		} finally {
+			SimulationWorld.resetCurrent();
+		}
+    }
+
+
+    /**
+     * Create the easy intersection scene (two traffic lights controlled by a Petri net)
+     * in the current SimulationWorld.
+     *
+     * Also used by the benchmarks in src/jmh/java.
+     *
+     * @param drawables Collects the visualized objects of the scene
+     * @return The Petri net controlling the traffic lights
+     */
+    public static PetriNet createEasyIntersection(
+    		Collection<Drawable> drawables, int xCoordinate, int yCoordinate) throws PetriNetComponentException {
 
     	// Lane from east to west
     	VehicleProducer eastStart = new VehicleProducer(800, 100);
@@ -186,8 +382,8 @@ public class MainPN {
 		//new TrafficLightObserver(westTrafficLight).setActionPNTargetPlace("WAITING");
 		//new TrafficLightObserver(southTrafficLight).setActionPNTargetPlace("WAITING");
 
-    	// Add all drawables (lanes and traffic lights) to the view controller
-    	controller.getView().getTrafficView().addAllDrawables(
+    	// Collect all drawables (lanes and traffic lights) for the view
+    	Collections.addAll(drawables,
 			eastWestLane,
 			westIncomingLane, westTrafficLightLane, eastDestinationLane1,
 			westToSouthTurnLane1, westToSouthTurnLane2, southDestinationLane,
@@ -213,11 +409,11 @@ public class MainPN {
      * one lane after the traffic light. The TrafficLight object itself thus
      * connects the two lanes, which comprise the road.
      *
-     * @param controller
+     * @param drawables Collects the visualized objects of the scene
      * @return The contained traffic light
      */
     private static TrafficLight createTrafficLightSceneExample(
-    		TrafficController controller) {
+    		Collection<Drawable> drawables) {
 
 		// for example: on the left side a VehicleProducer sets vehicles onto the first lane
         VehicleProducer prod = new VehicleProducer();
@@ -242,7 +438,7 @@ public class MainPN {
         Lane laneBeforeTrafficLight = new Lane("VorAmpel", prod, trafficLight);
 		Lane laneAfterTrafficLight = new Lane("NachBuilding", trafficLight, cons);
 
-		controller.getView().getTrafficView().addAllDrawables(trafficLight,
+		Collections.addAll(drawables, trafficLight,
 			laneBeforeTrafficLight, laneAfterTrafficLight);
 
 		return trafficLight;
@@ -253,11 +449,11 @@ public class MainPN {
      * Create a traffic simulation scene that consists of two roads,
      * a traffic light and a building.
      *
-     * @param controller
+     * @param drawables Collects the visualized objects of the scene
      * @return The traffic light object in the scene
      */
     private static TrafficLight createTrafficLightSceneWithBuilding(
-    		TrafficController controller) {
+    		Collection<Drawable> drawables) {
 
         VehicleProducer prod = new VehicleProducer();
         prod.setStartPoint(100, 100);
@@ -276,7 +472,7 @@ public class MainPN {
         Lane lane_east_2 = new Lane("NachAmpel", tl, building);
 		Lane nachBuilding = new Lane("NachBuilding", building, cons);
 
-		controller.getView().getTrafficView().addAllDrawables(
+		Collections.addAll(drawables,
 				lane_east, lane_east_2, nachBuilding, tl, building);
 
 		return tl;
@@ -287,11 +483,11 @@ public class MainPN {
      * Creates a traffic scene that consists of an intersection that consists
      * of two extended lanes, i.e. the lane is extended by a turn left lane
      * and a turn right lane.
-     * @param controller
+     * @param drawables Collects the visualized objects of the scene
      * @return The traffic light object in the scene
      */
     private static TrafficLight createTwoLaneIntersection(
-    		TrafficController controller) {
+    		Collection<Drawable> drawables) {
 
 		// All lanes starting in the west
 		VehicleProducer westStart = new VehicleProducer();
@@ -430,8 +626,8 @@ public class MainPN {
 
 
 
-		// Controller
-		controller.getView().getTrafficView().addAllDrawables(
+		// Collect for the view
+		Collections.addAll(drawables,
 			// Lanes starting in the west
 			westIncomingLane,
 			westTurnNorthLane1, westTurnNorthLane2, westTurnNorthLane3,
@@ -464,111 +660,15 @@ public class MainPN {
 
 
     /**
-     * Build test Petri network for traffic light.
+     * Build test Petri network for traffic light:
+     * one intersection whose phases alternate between the south and the west light.
      */
 	private static PetriNet buildNet(TrafficLight southTrafficLight,TrafficLight westTrafficLight) throws PetriNetComponentException {
-		// Create a Petri Net.
-		PetriNet net = new PetriNet();
-		net.addToken(new ColoredToken("Default",Color.BLACK));
-		HashMap<String,String> weights = new HashMap<>();
-		weights.put("Default","1");
-		DiscreteExternalActionCallTransition turnPhaseWest = new DiscreteExternalActionCallTransition("turnPhaseWest", "turnPhaseWest",() -> {
-			westTrafficLight.setTrafficLightGreen(Color.YELLOW);
-		});
-		turnPhaseWest.setTimed(true);
-		turnPhaseWest.setDelay(TIME_START_PHASE);
-		net.addTransition(turnPhaseWest);
-		DiscreteExternalActionCallTransition turnPhaseSouth = new DiscreteExternalActionCallTransition("turnPhaseSouth", "turnPhaseSouth",() -> {
-			southTrafficLight.setTrafficLightGreen(Color.YELLOW);
-		});
-		turnPhaseSouth.setTimed(true);
-		turnPhaseSouth.setDelay(TIME_START_PHASE);
-		net.addTransition(turnPhaseSouth);
-		DiscretePlace isPhaseWest = new DiscretePlace("isPhaseWest", "isPhaseWest");
-		DiscretePlace isPhaseSouth = new DiscretePlace("isPhaseSouth", "isPhaseSouth");
-		net.addPlace(isPhaseWest);
-		net.addPlace(isPhaseSouth);
-		isPhaseSouth.incrementTokenCount("Default");
-		net.addArc(new InboundNormalArc(isPhaseWest,turnPhaseWest,weights));
-		net.addArc(new InboundNormalArc(isPhaseSouth,turnPhaseSouth,weights));
-
-		//south Trafficlight
-		TrafficLight light =  southTrafficLight;
-		Place isGreen = new DiscretePlace("Green"+light);
-		Place isYellow = new DiscretePlace("Yellow"+light);
-		Place isRed = new DiscretePlace("Red"+light);
-		net.addPlace(isGreen);
-		net.addPlace(isYellow);
-		net.addPlace(isRed);
-		isRed.incrementTokenCount("Default");
-		DiscreteExternalActionCallTransition turnRed = new DiscreteExternalActionCallTransition("turnRed" + light, "turnRed" + light, () -> {
-			light.setTrafficLightGreen(Color.RED);
-		});
-		turnRed.setTimed(true);
-		turnRed.setDelay(TIME_YELLOW);
-		net.addTransition(turnRed);
-		DiscreteExternalActionCallTransition turnYellow = new DiscreteExternalActionCallTransition("turnYellow" + light, "turnYellow" + light, () -> {
-			light.setTrafficLightGreen(Color.YELLOW);
-		});
-		turnYellow.setTimed(true);
-		turnYellow.setDelay(TIME_GREEN);
-		net.addTransition(turnYellow);
-		DiscreteExternalActionCallTransition turnGreen = new DiscreteExternalActionCallTransition("turnGreen" + light, "turnGreen" + light, () -> {
-			light.setTrafficLightGreen(Color.GREEN);
-		});
-		turnGreen.setTimed(true);
-		turnGreen.setDelay(TIME_YELLOW_RED);
-		net.addTransition(turnGreen);
-		net.addArc(new InboundNormalArc(isGreen,turnYellow,weights));
-		net.addArc(new OutboundNormalArc(turnYellow,isYellow,weights));
-		net.addArc(new InboundNormalArc(isYellow,turnRed,weights));
-		net.addArc(new OutboundNormalArc(turnRed,isRed,weights));
-		net.addArc(new InboundNormalArc(isRed,turnGreen,weights));
-		net.addArc(new InboundNormalArc(isYellow,turnGreen,weights));
-		net.addArc(new OutboundNormalArc(turnGreen,isGreen,weights));
-		net.addArc(new OutboundNormalArc(turnPhaseSouth,isYellow,weights));
-		net.addArc(new OutboundNormalArc(turnRed,isPhaseWest,weights));
-		net.addArc(new InboundInhibitorArc(isRed,turnRed));
-
-		//south Trafficlight
-		TrafficLight light2 =  westTrafficLight;
-		isGreen = new DiscretePlace("Green"+light2);
-		isYellow = new DiscretePlace("Yellow"+light2);
-		isRed = new DiscretePlace("Red"+light2);
-		net.addPlace(isGreen);
-		net.addPlace(isYellow);
-		net.addPlace(isRed);
-		isRed.incrementTokenCount("Default");
-		turnRed = new DiscreteExternalActionCallTransition("turnRed" + light2, "turnRed" + light2, () -> {
-			light2.setTrafficLightGreen(Color.RED);
-		});
-		turnRed.setTimed(true);
-		turnRed.setDelay(TIME_YELLOW);
-		net.addTransition(turnRed);
-		turnYellow = new DiscreteExternalActionCallTransition("turnYellow" + light2, "turnYellow" + light2, () -> {
-			light2.setTrafficLightGreen(Color.YELLOW);
-		});
-		turnYellow.setTimed(true);
-		turnYellow.setDelay(TIME_GREEN);
-		net.addTransition(turnYellow);
-		turnGreen = new DiscreteExternalActionCallTransition("turnGreen" + light2, "turnGreen" + light2, () -> {
-			light2.setTrafficLightGreen(Color.GREEN);
-		});
-		turnGreen.setTimed(true);
-		turnGreen.setDelay(TIME_YELLOW_RED);
-		net.addTransition(turnGreen);
-		net.addArc(new InboundNormalArc(isGreen,turnYellow,weights));
-		net.addArc(new OutboundNormalArc(turnYellow,isYellow,weights));
-		net.addArc(new InboundNormalArc(isYellow,turnRed,weights));
-		net.addArc(new OutboundNormalArc(turnRed,isRed,weights));
-		net.addArc(new InboundNormalArc(isRed,turnGreen,weights));
-		net.addArc(new InboundNormalArc(isYellow,turnGreen,weights));
-		net.addArc(new OutboundNormalArc(turnGreen,isGreen,weights));
-		net.addArc(new OutboundNormalArc(turnPhaseWest,isYellow,weights));
-		net.addArc(new OutboundNormalArc(turnRed,isPhaseSouth,weights));
-		net.addArc(new InboundInhibitorArc(isRed,turnRed));
-
-		return net;
+		IntersectionTemplate template = new IntersectionTemplate(TIME_GREEN, TIME_YELLOW,
+				TIME_START_PHASE, TIME_YELLOW_RED);
+		return new IntersectionControllerBuilder(template)
+				.addIntersection("Main", southTrafficLight, westTrafficLight)
+				.build();
 	}
 
 }
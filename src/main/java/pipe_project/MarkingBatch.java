@@ -0,0 +1,74 @@
+package pipe_project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Place markings collected during a simulation step.
+ *
+ * Observers add markings while the traffic simulation is updated, the runner applies
+ * all of them at once before its next step (with a single acquisition of the Petri net).
+ * Markings of the same place and token type are coalesced - as a marking sets the
+ * number of tokens, only the last one counts.
+ */
+public class MarkingBatch {
+
+	/**
+	 * Receives the markings when the batch is applied.
+	 */
+	public interface Target {
+		public void setCount(String placeId, String token, int count);
+	}
+
+	// Two maps are swapped when applying, so observers can already add
+	// markings for the next step while the batch is applied.
+	private Map<String, Map<String, Integer>> pending = new LinkedHashMap<>();
+	private Map<String, Map<String, Integer>> applying = new LinkedHashMap<>();
+	private volatile boolean empty = true;
+
+	/**
+	 * Add a marking: set the number of tokens of the given type in the place.
+	 */
+	public synchronized void add(String placeId, String token, int count) {
+		Map<String, Integer> counts = pending.get(placeId);
+		if (counts == null) {
+			counts = new LinkedHashMap<>();
+			pending.put(placeId, counts);
+		}
+		counts.put(token, count);
+		empty = false;
+	}
+
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Apply all collected markings (in the order the places were first marked)
+	 * and empty the batch (also when the target rejects a marking).
+	 *
+	 * @return true if any marking was applied
+	 */
+	public boolean applyTo(Target target) {
+		if (empty) {
+			return false;
+		}
+		Map<String, Map<String, Integer>> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = applying;
+			applying = batch;
+			empty = true;
+		}
+		try {
+			for (Map.Entry<String, Map<String, Integer>> place : batch.entrySet()) {
+				for (Map.Entry<String, Integer> count : place.getValue().entrySet()) {
+					target.setCount(place.getKey(), count.getKey(), count.getValue());
+				}
+			}
+		} finally {
+			batch.clear();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,395 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+/**
+ * Runs a net consisting of independent subnets (e.g. the controllers of many
+ * intersections, see IntersectionControllerBuilder) in parallel.
+ *
+ * The net is split into its connected parts - places declared as interface places
+ * do not connect the transitions producing into them (or testing them with an
+ * inhibitor arc) with the transitions consuming from them. The parts are grouped into
+ * partitions, each partition is a CompiledPetriNet run by its own CompiledPetriNetRunner,
+ * and in each step all partitions are stepped concurrently on a fork join pool.
+ *
+ * Each partition touching an interface place has its own copy of the place. After a
+ * step the changes of all copies are added up and every copy is set to the result:
+ * tokens produced into an interface place are seen by the other partitions from the
+ * next step on. All transitions consuming from an interface place end up in the same
+ * partition, so a token can not be consumed twice. Without interface places the net
+ * runs exactly as with a single CompiledPetriNetRunner.
+ *
+ * External actions are invoked from the threads of the pool - the actions of different
+ * partitions must not change the same objects. The marking hash of published firings
+ * is the hash of the marking of the partition.
+ */
+public class PartitionedPetriNetRunner implements PetriNetStepper {
+
+	private final CompiledPetriNetRunner[] partitions;
+	private final ForkJoinPool pool;
+	// Interface places: index of the copy in each partition (-1 if the partition
+	// does not contain the place) and tokens after the last synchronization.
+	private final String[] interface_ids;
+	private final int[][] interface_copies;
+	private final int[] interface_tokens;
+	private final Map<String, Integer> interface_index = new HashMap<>();
+	// Partitions containing a place (and the index of the place in each of them).
+	private final Map<String, int[][]> place_copies = new HashMap<>();
+	private long current_time = 0;
+	private long real_start_time = -1;
+	// Markings to apply before the next step.
+	private final MarkingBatch marking_batch = new MarkingBatch();
+	private final MarkingBatch.Target net_target = (placeId, token, count) -> markPlace(placeId, token, count);
+
+	/**
+	 * Run the net on the common fork join pool.
+	 *
+	 * @param petriNet The net
+	 * @param interfacePlaces Ids of the places connecting the subnets
+	 */
+	public PartitionedPetriNetRunner(PetriNet petriNet, Collection<String> interfacePlaces)
+			throws PetriNetComponentException {
+		this(CompiledPetriNet.compile(petriNet), interfacePlaces, ForkJoinPool.commonPool(),
+				4 * ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/**
+	 * @param net The net
+	 * @param interfacePlaces Ids of the places connecting the subnets
+	 * @param pool Pool stepping the partitions
+	 * @param maxPartitions Maximal number of partitions (subnets are grouped into partitions
+	 *        of similar size, more partitions than threads balance the load)
+	 */
+	public PartitionedPetriNetRunner(CompiledPetriNet net, Collection<String> interfacePlaces,
+			ForkJoinPool pool, int maxPartitions) throws PetriNetComponentException {
+		this.pool = pool;
+		int places = net.getNumberOfPlaces();
+		int transitions = net.getNumberOfTransitions();
+		boolean[] isInterface = new boolean[places];
+		for (String placeId : interfacePlaces) {
+			int place = net.getPlaceIndex(placeId);
+			if (place < 0) {
+				throw new PetriNetComponentException("Unknown interface place " + placeId);
+			}
+			isInterface[place] = true;
+		}
+
+		// Connected parts of the transitions (union find): transitions sharing a place
+		// are connected - for an interface place only the consuming transitions.
+		int[] parent = new int[transitions];
+		for (int t = 0; t < transitions; t++) {
+			parent[t] = t;
+		}
+		int[] connectedTo = new int[places];
+		Arrays.fill(connectedTo, -1);
+		for (int t = 0; t < transitions; t++) {
+			for (int p : net.getInputPlaces(t)) {
+				connectedTo[p] = union(parent, connectedTo[p], t);
+			}
+			for (int p : net.getInhibitorPlaces(t)) {
+				if (!isInterface[p]) {
+					connectedTo[p] = union(parent, connectedTo[p], t);
+				}
+			}
+			for (int p : net.getOutputPlaces(t)) {
+				if (!isInterface[p]) {
+					connectedTo[p] = union(parent, connectedTo[p], t);
+				}
+			}
+		}
+
+		// Group the parts into partitions: largest parts first, each into the
+		// partition with the fewest transitions so far.
+		Map<Integer, List<Integer>> parts = new HashMap<>();
+		List<Integer> roots = new ArrayList<>();
+		for (int t = 0; t < transitions; t++) {
+			int root = find(parent, t);
+			List<Integer> part = parts.get(root);
+			if (part == null) {
+				part = new ArrayList<>();
+				parts.put(root, part);
+				roots.add(root);
+			}
+			part.add(t);
+		}
+		Collections.sort(roots, (a, b) -> parts.get(b).size() - parts.get(a).size());
+		int numberOfPartitions = Math.max(1, Math.min(roots.size(), maxPartitions));
+		int[] load = new int[numberOfPartitions];
+		int[] partitionOf = new int[transitions];
+		for (int root : roots) {
+			int target = 0;
+			for (int k = 1; k < numberOfPartitions; k++) {
+				if (load[k] < load[target]) {
+					target = k;
+				}
+			}
+			for (int t : parts.get(root)) {
+				partitionOf[t] = target;
+			}
+			load[target] += parts.get(root).size();
+		}
+
+		// Places of each partition: all places connected to its transitions
+		// (places without arcs are kept in the first partition).
+		boolean[][] contains = new boolean[numberOfPartitions][places];
+		for (int t = 0; t < transitions; t++) {
+			boolean[] partitionPlaces = contains[partitionOf[t]];
+			for (int p : net.getInputPlaces(t)) {
+				partitionPlaces[p] = true;
+			}
+			for (int p : net.getOutputPlaces(t)) {
+				partitionPlaces[p] = true;
+			}
+			for (int p : net.getInhibitorPlaces(t)) {
+				partitionPlaces[p] = true;
+			}
+		}
+		for (int p = 0; p < places; p++) {
+			boolean anywhere = false;
+			for (int k = 0; k < numberOfPartitions; k++) {
+				anywhere |= contains[k][p];
+			}
+			if (!anywhere) {
+				contains[0][p] = true;
+			}
+		}
+
+		// Build the partitions - places and transitions keep the order of the net.
+		partitions = new CompiledPetriNetRunner[numberOfPartitions];
+		int[][] localIndex = new int[numberOfPartitions][places];
+		for (int k = 0; k < numberOfPartitions; k++) {
+			CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+			Arrays.fill(localIndex[k], -1);
+			for (int p = 0; p < places; p++) {
+				if (contains[k][p]) {
+					localIndex[k][p] = builder.addPlace(net.getPlaceId(p), net.getTokens(p));
+				}
+			}
+			for (int t = 0; t < transitions; t++) {
+				if (partitionOf[t] != k) {
+					continue;
+				}
+				int local = builder.addTransition(net.getTransitionId(t), net.isTimed(t), net.getDelay(t),
+						net.getPriority(t), net.getAction(t));
+				int[] input = net.getInputPlaces(t);
+				int[] inputWeights = net.getInputWeights(t);
+				for (int i = 0; i < input.length; i++) {
+					builder.addInputArc(net.getPlaceId(input[i]), local, inputWeights[i]);
+				}
+				int[] output = net.getOutputPlaces(t);
+				int[] outputWeights = net.getOutputWeights(t);
+				for (int i = 0; i < output.length; i++) {
+					builder.addOutputArc(local, net.getPlaceId(output[i]), outputWeights[i]);
+				}
+				for (int p : net.getInhibitorPlaces(t)) {
+					builder.addInhibitorArc(net.getPlaceId(p), local);
+				}
+			}
+			partitions[k] = new CompiledPetriNetRunner(builder.build());
+		}
+
+		List<Integer> interfaces = new ArrayList<>();
+		for (int p = 0; p < places; p++) {
+			List<int[]> copies = new ArrayList<>();
+			for (int k = 0; k < numberOfPartitions; k++) {
+				if (localIndex[k][p] >= 0) {
+					copies.add(new int[] {k, localIndex[k][p]});
+				}
+			}
+			place_copies.put(net.getPlaceId(p), copies.toArray(new int[copies.size()][]));
+			if (copies.size() > 1) {
+				interfaces.add(p);
+			}
+		}
+		interface_ids = new String[interfaces.size()];
+		interface_copies = new int[interfaces.size()][];
+		interface_tokens = new int[interfaces.size()];
+		for (int i = 0; i < interface_ids.length; i++) {
+			int p = interfaces.get(i);
+			interface_ids[i] = net.getPlaceId(p);
+			interface_index.put(interface_ids[i], i);
+			interface_copies[i] = new int[numberOfPartitions];
+			for (int k = 0; k < numberOfPartitions; k++) {
+				interface_copies[i][k] = localIndex[k][p];
+			}
+			interface_tokens[i] = net.getTokens(p);
+		}
+	}
+
+	private static int find(int[] parent, int t) {
+		while (parent[t] != t) {
+			parent[t] = parent[parent[t]];
+			t = parent[t];
+		}
+		return t;
+	}
+
+	/*
+	 * Connect the transition with the part of the place (-1: the place is not connected yet),
+	 * returns the transition now representing the place.
+	 */
+	private static int union(int[] parent, int connected, int t) {
+		if (connected >= 0) {
+			int a = find(parent, connected), b = find(parent, t);
+			if (a != b) {
+				parent[Math.max(a, b)] = Math.min(a, b);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Steps a range of the partitions (split in halves until a single partition is left).
+	 */
+	private static class StepPartitions extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// The task is never serialized - the runners are not either.
+		private final transient CompiledPetriNetRunner[] partitions;
+		private final int from, to, duration;
+
+		StepPartitions(CompiledPetriNetRunner[] partitions, int from, int to, int duration) {
+			this.partitions = partitions;
+			this.from = from;
+			this.to = to;
+			this.duration = duration;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				partitions[from].stepFastForwardPetriNet(duration);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new StepPartitions(partitions, from, middle, duration),
+						new StepPartitions(partitions, middle, to, duration));
+			}
+		}
+	}
+
+	@Override
+	public void stepFastForwardPetriNet(int duration) {
+		marking_batch.applyTo(net_target);
+		if (partitions.length == 1 || pool.getParallelism() == 1) {
+			for (CompiledPetriNetRunner partition : partitions) {
+				partition.stepFastForwardPetriNet(duration);
+			}
+		} else {
+			pool.invoke(new StepPartitions(partitions, 0, partitions.length, duration));
+		}
+		synchronizeInterfaces();
+		current_time += duration;
+	}
+
+	/*
+	 * Add up the changes of all copies of each interface place and set all copies to the sum.
+	 */
+	private void synchronizeInterfaces() {
+		for (int i = 0; i < interface_ids.length; i++) {
+			int[] copies = interface_copies[i];
+			int before = interface_tokens[i];
+			int tokens = before;
+			for (int k = 0; k < copies.length; k++) {
+				if (copies[k] >= 0) {
+					tokens += partitions[k].getNet().getTokens(copies[k]) - before;
+				}
+			}
+			interface_tokens[i] = tokens;
+			for (int k = 0; k < copies.length; k++) {
+				if (copies[k] >= 0 && partitions[k].getNet().getTokens(copies[k]) != tokens) {
+					partitions[k].markPlace(copies[k], tokens);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Like stepFastForwardPetriNet, but waits afterwards
+	 * if the Petri net got ahead of the real time.
+	 */
+	@Override
+	public void stepPetriNetSynchronized(int duration) {
+		if (real_start_time < 0) {
+			real_start_time = System.currentTimeMillis() - current_time;
+		}
+		stepFastForwardPetriNet(duration);
+		long ahead = current_time - (System.currentTimeMillis() - real_start_time);
+		if (ahead > 0) {
+			try {
+				Thread.sleep(ahead);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Set the number of tokens in a place - in all partitions containing it
+	 * (the token name is ignored, see CompiledPetriNetRunner).
+	 */
+	@Override
+	public void markPlace(String placeId, String token, int count) {
+		int[][] copies = place_copies.get(placeId);
+		if (copies == null) {
+			throw new IllegalArgumentException("Unknown place " + placeId);
+		}
+		for (int[] copy : copies) {
+			partitions[copy[0]].markPlace(copy[1], count);
+		}
+		Integer shared = interface_index.get(placeId);
+		if (shared != null) {
+			interface_tokens[shared] = count;
+		}
+	}
+
+	@Override
+	public void markPlaceBatched(String placeId, String token, int count) {
+		marking_batch.add(placeId, token, count);
+	}
+
+	/**
+	 * Number of tokens in a place (after the last synchronization for interface places).
+	 */
+	public int getTokens(String placeId) {
+		int[][] copies = place_copies.get(placeId);
+		if (copies == null) {
+			throw new IllegalArgumentException("Unknown place " + placeId);
+		}
+		return partitions[copies[0][0]].getNet().getTokens(copies[0][1]);
+	}
+
+	/**
+	 * Publish all firings of all partitions into the pipeline.
+	 */
+	public void setFiringPipeline(FiringEventPipeline pipeline) {
+		for (CompiledPetriNetRunner partition : partitions) {
+			partition.setFiringPipeline(pipeline);
+		}
+	}
+
+	@Override
+	public long getPNTimeSinceStart() {
+		return current_time;
+	}
+
+	public int getNumberOfPartitions() {
+		return partitions.length;
+	}
+
+	/*
+	 * Ids of the places shared by more than one partition.
+	 */
+	public List<String> getInterfacePlaces() {
+		return Collections.unmodifiableList(Arrays.asList(interface_ids));
+	}
+}
@@ -0,0 +1,40 @@
+package pipe_project;
+
+/**
+ * Advances a Petri net controlling a traffic simulation step by step.
+ *
+ * Implemented by the FFWTimePetriNetRunner (running the PIPE ExecutablePetriNet)
+ * and by the CompiledPetriNetRunner (running a CompiledPetriNet).
+ */
+public interface PetriNetStepper {
+
+	/**
+	 * Advance the Petri net by duration ms as fast as possible: all transitions
+	 * becoming due in this time are fired.
+	 */
+	public void stepFastForwardPetriNet(int duration);
+
+	/**
+	 * Advance the Petri net by duration ms, but not faster than real time.
+	 */
+	public void stepPetriNetSynchronized(int duration);
+
+	/**
+	 * Set the number of tokens of the given token type in a place.
+	 */
+	public void markPlace(String placeId, String token, int count) throws InterruptedException;
+
+	/**
+	 * Set the number of tokens of the given token type in a place before the next step.
+	 *
+	 * Markings are collected (see MarkingBatch) and applied together at the beginning
+	 * of the next step - repeated markings of the same place are coalesced.
+	 */
+	public void markPlaceBatched(String placeId, String token, int count);
+
+	/*
+	 * Time of the Petri net in ms since it was started.
+	 */
+	public long getPNTimeSinceStart();
+
+}
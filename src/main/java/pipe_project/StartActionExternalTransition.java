@@ -2,19 +2,26 @@ package pipe_project;
 
 import uk.ac.imperial.pipe.models.petrinet.AbstractExternalTransition;
 
-import javax.json.Json;
-import javax.json.JsonObject;
-
-import uk.ac.imperial.pipe.models.petrinet.AbstractTransitionJsonParameters;
-import uk.ac.imperial.pipe.runner.JsonParameters;
-
 /**
  * The fired transition connecting to the external action.
+ *
+ * The entry of the action in the ExternalActionDispatchTable is looked up
+ * at the first firing, afterwards the action is invoked directly.
  */
 public class StartActionExternalTransition extends AbstractExternalTransition {
+
+	private ExternalActionDispatchTable dispatch_table;
+	private int dispatch_index;
+
 	@Override
 	public void fire() {
-		((DiscreteExternalActionCallTransition) this.getExternalTransitionProvider()).getExternalAction().invokeExternalAction();
+		if (dispatch_table == null) {
+			DiscreteExternalActionCallTransition provider =
+					(DiscreteExternalActionCallTransition) this.getExternalTransitionProvider();
+			dispatch_index = provider.getDispatchIndex();
+			dispatch_table = provider.getDispatchTable();
+		}
+		dispatch_table.invoke(dispatch_index);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package pipe_project;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of transitions (by their index) ordered by a key and the index.
+ *
+ * The position of every transition in the heap is known, so a transition can be
+ * removed directly when it gets disabled.
+ */
+class TransitionHeap {
+
+	private final int[] heap;
+	private final long[] key;
+	// Position of a transition in the heap, -1 if it is not in the heap.
+	private final int[] position;
+	private int size = 0;
+
+	TransitionHeap(int numberOfTransitions) {
+		heap = new int[numberOfTransitions];
+		key = new long[numberOfTransitions];
+		position = new int[numberOfTransitions];
+		Arrays.fill(position, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int transition) {
+		return position[transition] >= 0;
+	}
+
+	/*
+	 * Transition with the smallest key (-1 if the heap is empty).
+	 */
+	int peek() {
+		return (size > 0) ? heap[0] : -1;
+	}
+
+	long peekKey() {
+		return key[heap[0]];
+	}
+
+	void add(int transition, long transitionKey) {
+		if (contains(transition)) {
+			remove(transition);
+		}
+		key[transition] = transitionKey;
+		heap[size] = transition;
+		position[transition] = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	void remove(int transition) {
+		int pos = position[transition];
+		if (pos < 0) {
+			return;
+		}
+		position[transition] = -1;
+		size--;
+		if (pos < size) {
+			heap[pos] = heap[size];
+			position[heap[pos]] = pos;
+			siftDown(pos);
+			siftUp(pos);
+		}
+	}
+
+	private boolean less(int a, int b) {
+		return (key[a] < key[b]) || ((key[a] == key[b]) && (a < b));
+	}
+
+	private void siftUp(int pos) {
+		int transition = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!less(transition, heap[parent])) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			position[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = transition;
+		position[transition] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int transition = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if ((child + 1 < size) && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!less(heap[child], transition)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			position[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = transition;
+		position[transition] = pos;
+	}
+}
@@ -0,0 +1,191 @@
+package traffic_sim;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ArrivalProfile
+ *
+ * Demand of a VehicleProducer as a piecewise constant arrival rate over time:
+ * from each given time on vehicles arrive with the given rate (vehicles per second
+ * of simulation time) until the next time in the table. The profile can repeat itself
+ * after a period (e.g. a day).
+ *
+ * Arrivals are an inhomogeneous Poisson process - the time of the next arrival is
+ * sampled directly by inverting the cumulative rate, so a producer only has to be
+ * updated when the next vehicle arrives.
+ *
+ * A profile file contains lines "time rate" (in seconds and vehicles per second),
+ * optionally a line "period seconds" and comments starting with #, e.g.
+ * <pre>
+ * period 86400
+ * 0      0.05
+ * 25200  0.6
+ * 32400  0.3
+ * </pre>
+ */
+public class ArrivalProfile {
+
+	// Start times (ascending, starting with 0) and rates of the segments.
+	private final double[] start_times;
+	private final double[] rates;
+	// Length of the profile when it repeats itself - infinity if it does not.
+	private final double period;
+
+	/**
+	 * @param startTimes Start times of the segments (ascending, the first one is 0)
+	 * @param rates Arrival rates of the segments (vehicles per second)
+	 * @param period The profile repeats after this time (Double.POSITIVE_INFINITY if not)
+	 */
+	public ArrivalProfile(double[] startTimes, double[] rates, double period) {
+		if (startTimes.length == 0 || startTimes.length != rates.length || startTimes[0] != 0.) {
+			throw new IllegalArgumentException("A profile needs a rate for each start time - starting at 0");
+		}
+		for (int i = 0; i < startTimes.length; i++) {
+			if ((i > 0 && startTimes[i] <= startTimes[i - 1]) || rates[i] < 0 || Double.isNaN(rates[i])) {
+				throw new IllegalArgumentException("Start times have to ascend and rates must not be negative");
+			}
+		}
+		if (!(period > startTimes[startTimes.length - 1])) {
+			throw new IllegalArgumentException("The period has to be after the last start time");
+		}
+		this.start_times = startTimes.clone();
+		this.rates = rates.clone();
+		this.period = period;
+	}
+
+	/**
+	 * Vehicles arrive with the same rate all the time.
+	 */
+	public static ArrivalProfile constant(double rate) {
+		return new ArrivalProfile(new double[] {0.}, new double[] {rate}, Double.POSITIVE_INFINITY);
+	}
+
+	public static ArrivalProfile load(String file) throws IOException {
+		List<double[]> segments = new ArrayList<>();
+		double period = Double.POSITIVE_INFINITY;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] fields = line.split("[\\s,;]+");
+				try {
+					if (fields.length == 2 && fields[0].equals("period")) {
+						period = Double.parseDouble(fields[1]);
+					} else if (fields.length == 2) {
+						segments.add(new double[] {Double.parseDouble(fields[0]), Double.parseDouble(fields[1])});
+					} else {
+						throw new IOException(file + ":" + lineNumber + ": expected \"time rate\"");
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+		double[] startTimes = new double[segments.size()];
+		double[] rates = new double[segments.size()];
+		for (int i = 0; i < startTimes.length; i++) {
+			startTimes[i] = segments.get(i)[0];
+			rates[i] = segments.get(i)[1];
+		}
+		try {
+			return new ArrivalProfile(startTimes, rates, period);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Arrival rate (vehicles per second) at the given time.
+	 */
+	public double getRate(double time) {
+		return rates[segment(timeInPeriod(time))];
+	}
+
+	private double timeInPeriod(double time) {
+		return Double.isInfinite(period) ? time : time - Math.floor(time / period) * period;
+	}
+
+	/*
+	 * Segment containing the time (inside the period).
+	 */
+	private int segment(double time) {
+		int low = 0, high = start_times.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (start_times[mid] <= time) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sample the time of the next arrival after the given time: an exponentially
+	 * distributed amount of "demand" is drawn and the segments are walked through
+	 * until the cumulative rate reaches it.
+	 *
+	 * @return The time of the next arrival - Double.POSITIVE_INFINITY if there is none
+	 */
+	public double nextArrivalTime(double time, Random random) {
+		double demand = -Math.log(1. - random.nextDouble());
+		double periodStart = Double.isInfinite(period) ? 0. : time - timeInPeriod(time);
+		double current = time - periodStart;
+		int seg = segment(current);
+		// Demand of a whole period - to skip complete periods at once.
+		double periodDemand = Double.isInfinite(period) ? 0. : cumulativeRate(period);
+		if (periodDemand <= 0. && !Double.isInfinite(period)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		while (true) {
+			double segmentEnd = (seg + 1 < start_times.length) ? start_times[seg + 1] : period;
+			double segmentDemand = rates[seg] * (segmentEnd - current);
+			if (rates[seg] > 0. && demand <= segmentDemand) {
+				return periodStart + current + demand / rates[seg];
+			}
+			if (Double.isInfinite(segmentEnd)) {
+				// Last segment of a profile without period and rate 0.
+				return Double.POSITIVE_INFINITY;
+			}
+			demand -= segmentDemand;
+			current = segmentEnd;
+			seg++;
+			if (seg == start_times.length) {
+				// Next period - whole periods without an arrival are skipped.
+				periodStart += period;
+				double skipped = Math.floor(demand / periodDemand);
+				periodStart += skipped * period;
+				demand -= skipped * periodDemand;
+				current = 0.;
+				seg = 0;
+			}
+		}
+	}
+
+	/*
+	 * Expected number of arrivals from 0 to the given time (inside the period).
+	 */
+	private double cumulativeRate(double time) {
+		double sum = 0.;
+		for (int i = 0; i < start_times.length && start_times[i] < time; i++) {
+			double end = (i + 1 < start_times.length) ? Math.min(start_times[i + 1], time) : time;
+			sum += rates[i] * (end - start_times[i]);
+		}
+		return sum;
+	}
+}
@@ -17,6 +17,8 @@ public class Building extends TemporalTrafficObject implements VehicleConsumerIn
 
 
     private Color color;
+    // Random source for the time cars stay in the building.
+    private final Random random = world.newRandom();
 
     public void setColor(Color color) {
         this.color = color;
@@ -66,12 +68,22 @@ public class Building extends TemporalTrafficObject implements VehicleConsumerIn
         }
     }
 
+    @Override
+    public double getNextEventTime() {
+        return vehicles.isEmpty() ? Double.POSITIVE_INFINITY : super.getNextEventTime();
+    }
+
     @Override
     public void redraw(Graphics2D g2d) {
         g2d.setPaint(this.color);
         g2d.fillRect(position.x-(sizeX/2), position.y-(sizeY/2), sizeX, sizeY);
     }
 
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle(position.x-(sizeX/2), position.y-(sizeY/2), sizeX, sizeY);
+    }
+
     @Override
     public Integer priority() {
         return 2;
@@ -84,7 +96,8 @@ public class Building extends TemporalTrafficObject implements VehicleConsumerIn
             System.err.println(name);
             return false;
         }
-        vehicles.put(veh, new Random().nextInt(10000) + 5000); //TODO: use sensible value
+        vehicles.put(veh, random.nextInt(10000) + 5000); //TODO: use sensible value
+        wakeUp();
         return true;
     }
 
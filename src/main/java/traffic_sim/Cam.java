@@ -1,35 +1,32 @@
 package traffic_sim;
 
+import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
 /**
  * Cam
  * 
  * Can be linked to a Lane as a sensor. It counts the vehicles in front of the 
  * TrafficLight.
  * Because of intended measurement inaccuracy it depends on the vehicle's distance and velocity.
+ * Only the last {@link #OBSERVATION_DISTANCE} meters of the lane are observed.
  *
  */
 //TODO: Different parameters for each Cam?
-public class Cam extends TemporalTrafficObject{
+public class Cam extends LaneSensor{
 
 	/**
-	 * The Lane that Cam is linked to.
+	 * Maximal distance the Cam is allowed to observe.
 	 */
-	private Lane lane;
+	private static final double OBSERVATION_DISTANCE = 50.;
 	/**
 	 * Length of the Lane.
 	 */
 	//TODO: What to do if LANE_LENGTH <  OBSERVATION_DISTANCE?
-	private double LANE_LENGTH;
+	private final double LANE_LENGTH;
 	/**
 	 * Expected number of Vehicles in front of the TrafficLight.
 	 */
 	private int numberOfVehicles;
-	/**
-	 * Maximal distance the Cam is allowed to observe.
-	 */
-	private final double OBSERVATION_DISTANCE = 50.;
 	/**
 	 * Maximal velocity the Cam is able to record.
 	 */
@@ -43,15 +40,17 @@ public class Cam extends TemporalTrafficObject{
 	 * Parameter to change the influence of the vehicle's velocity.
 	 */
 	private final double PARAM1_VELO = 40;
-	//TODO: Set seed?
-	private static Random rand = new Random();
+	// Random source split off the seed of the world.
+	private final Random rand = world.newRandom();
+	// Noise of an update, two values per vehicle (drawn at once).
+	private double[] noise = new double[32];
 	/**
 	 * Constructor
 	 * Cam is linked to one Lane.
 	 */
 	public Cam(Lane lane) {
-		this.lane = lane;
-		this.LANE_LENGTH = this.lane.getLength();
+		super(lane, lane.getLength() - OBSERVATION_DISTANCE, lane.getLength());
+		this.LANE_LENGTH = lane.getLength();
 	//TODO: ?! Integrate other lanes for that case: LANE_LENGTH < OBSERVATION_DISTANCE
 		
 	}
@@ -61,37 +60,35 @@ public class Cam extends TemporalTrafficObject{
 	 * Depends on the position and velocity of each single vehicle.
 	 */
 	public void countVehicleInFront() {
-		
-		ConcurrentLinkedQueue<Vehicle> vehicleOnLane = lane.getVehiclesOnLane();
-		int count = 0;
-		for(Vehicle vehicle : vehicleOnLane) {
-			count = shouldCount(vehicle) ? ++count : count; 
-		}
-		this.numberOfVehicles = count;
+		updateStep(0.);
 	}
+
 	/**
-	 * Decides to count a vehicle or not.
+	 * Decides for each vehicle in the observed window to count it or not.
 	 * Depends on the position and velocity of the vehicle.
 	 * 
-	 * Normal distribution used for both.
-	 * Checks the threshold of maximal distance and velocity.
-	 * 
-	 * @param vehicle
-	 * @return true or false
+	 * Normal distribution used for both (drawn for all vehicles before counting).
+	 * Checks the threshold of maximal velocity.
 	 */
-	private boolean shouldCount(Vehicle vehicle) {
-		double position = vehicle.getPositionInLane();
-		double velocity = vehicle.getCurrentVelocity();
-		
-		if (LANE_LENGTH - position > OBSERVATION_DISTANCE && velocity > MAX_OBSERVABLE_VELOCITY) {
-			return false;
-		} else if ( Math.abs(rand.nextGaussian()*PARAM1_DIST) > LANE_LENGTH - position && 
-				Math.abs(rand.nextGaussian()*PARAM1_VELO) > velocity) {
-			return true;
-		} else {
-			return false;
+	@Override
+	protected void sense(Sample sample, double duration) {
+		int n = sample.size();
+		if (noise.length < 2 * n) {
+			noise = Arrays.copyOf(noise, Math.max(2 * n, 2 * noise.length));
 		}
-		
+		for (int i = 0; i < 2 * n; i++) {
+			noise[i] = Math.abs(rand.nextGaussian());
+		}
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			double distance = LANE_LENGTH - sample.getPosition(i);
+			double velocity = sample.getVelocity(i);
+			if (velocity <= MAX_OBSERVABLE_VELOCITY && noise[2 * i] * PARAM1_DIST > distance
+					&& noise[2 * i + 1] * PARAM1_VELO > velocity) {
+				count++;
+			}
+		}
+		this.numberOfVehicles = count;
 	}
 	
 	/**
@@ -102,13 +99,13 @@ public class Cam extends TemporalTrafficObject{
 	public int getNumberOfVehicles() {
 		return numberOfVehicles;
 	}
-	
+
+	/**
+	 * Nothing to observe on an empty lane - the Cam is woken up by the lane.
+	 */
 	@Override
-	public void updateStep(double duration) {
-		countVehicleInFront();
-		//System.out.println("Expected Number Of cars: "+getNumberOfVehicles());
-		//System.out.println("Number Of cars: "+getNumberOfVehicles()+"Lane: "+lane.getVehiclesOnLane().size());
+	protected boolean isIdle() {
+		return numberOfVehicles == 0;
 	}
 	
 }
-
@@ -0,0 +1,21 @@
+package traffic_sim;
+
+/**
+ * CrossingListener
+ *
+ * A detector registered at a position of a lane (see Lane.addDetector).
+ * The lane calls the listener whenever a car passes the position - while the car
+ * is moved, so the listener must not change the lane (in the two phase update
+ * it is called from computeStep of the lane).
+ */
+public interface CrossingListener {
+
+	/**
+	 * A car passed the position of the detector.
+	 *
+	 * @param vehicle The car (keep its generation when keeping the handle, see Vehicle)
+	 * @param time Simulation time at which the car passed (interpolated inside the step)
+	 * @param velocity Velocity of the car when passing
+	 */
+	public void vehicleCrossed(Vehicle vehicle, double time, double velocity);
+}
@@ -4,8 +4,33 @@ import java.awt.*;
 
 /**
  * Created by hagbard on 1/18/16.
+ *
+ * The RoadPane draws the static parts of all drawables once (redrawStatic) and
+ * afterwards only snapshots of the moving parts (snapshot). redraw draws everything
+ * from the live state. Drawables with bounds are only drawn when they are visible.
  */
 public interface Drawable {
     void redraw(Graphics2D g2d);
     Integer priority();
+
+    /**
+     * Draw the parts that do not change while the simulation is running -
+     * by default the whole drawable.
+     */
+    default void redrawStatic(Graphics2D g2d) {
+        redraw(g2d);
+    }
+
+    /**
+     * Add the moving parts to a snapshot of the scene (called on the simulation thread).
+     */
+    default void snapshot(SceneSnapshot.Builder snapshot) {
+    }
+
+    /**
+     * Area covered by the drawable - null if unknown (the drawable is always drawn).
+     */
+    default Rectangle getBounds() {
+        return null;
+    }
 }
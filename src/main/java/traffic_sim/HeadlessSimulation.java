@@ -0,0 +1,110 @@
+package traffic_sim;
+
+/**
+ * Headless simulation engine.
+ *
+ * Counterpart of the TrafficController for evaluation runs: the traffic simulation
+ * of a SimulationWorld and its controlling Petri net are advanced in fast forward mode
+ * until a given simulated time horizon is reached. There is no View, no repaint and no sleeping,
+ * so it can be run on machines without a display.
+ */
+public class HeadlessSimulation {
+
+	private static final double UPDATE_STEP = 0.1;
+
+	/**
+	 * How the traffic objects are updated in each step:
+	 * SERIAL - SimulationWorld.updateAll (compute and commit phase on the calling thread),
+	 * PARALLEL - compute phase in parallel for all objects,
+	 * EVENT_DRIVEN - only objects which require an update are called and stretches
+	 * in which nothing happens are skipped.
+	 * All modes give the same result.
+	 */
+	public enum UpdateMode {
+		SERIAL, PARALLEL, EVENT_DRIVEN
+	}
+
+	private final SimulationWorld world;
+	private final double update_step;
+	private UpdateMode update_mode = UpdateMode.SERIAL;
+
+	/**
+	 * Construct an engine for the given world (its Petri net runner
+	 * can be null when the scene is not controlled by a Petri net).
+	 */
+	public HeadlessSimulation(SimulationWorld world) {
+		this(world, UPDATE_STEP);
+	}
+
+	public HeadlessSimulation(SimulationWorld world, double updateStep) {
+		this.world = world;
+		this.update_step = updateStep;
+	}
+
+	/**
+	 * Run the simulation for horizon seconds of simulated time.
+	 *
+	 * @param horizon Simulated time in seconds
+	 * @return Summary of the run including all VehicleConsumerEvaluations
+	 */
+	public SimulationResult run(double horizon) {
+		// Counting steps instead of comparing the accumulated time
+		// avoids an additional step due to rounding errors.
+		long steps = Math.round(horizon / update_step);
+		int pnDuration = (int) (update_step * 1000);
+		double startTime = world.getCurrentTime();
+		long wallStart = System.currentTimeMillis();
+		long step = 0;
+		while (step < steps) {
+			if ((update_mode == UpdateMode.EVENT_DRIVEN) && world.isIdle()) {
+				// No object requires an update before the next scheduled event: jump there.
+				// The Petri net is advanced over the whole stretch in one call - the runner
+				// itself jumps from one firing time to the next.
+				long idleSteps = Math.min(world.getStepsUntilNextEvent(update_step), steps - step);
+				idleSteps = Math.min(idleSteps, Integer.MAX_VALUE / pnDuration);
+				if (idleSteps > 0) {
+					if (world.getPetriNetRunner() != null) {
+						world.getPetriNetRunner().stepFastForwardPetriNet((int) idleSteps * pnDuration);
+					}
+					world.skipIdleSteps(idleSteps, update_step);
+					step += idleSteps;
+					continue;
+				}
+			}
+			if (world.getPetriNetRunner() != null) {
+				world.getPetriNetRunner().stepFastForwardPetriNet(pnDuration);
+			}
+			if (update_mode == UpdateMode.SERIAL) {
+				world.updateAll(update_step);
+			} else if (update_mode == UpdateMode.EVENT_DRIVEN) {
+				world.updateEventDriven(update_step);
+			} else {
+				world.updateAllTwoPhase(update_step, true);
+			}
+			step++;
+		}
+		SimulationResult result = new SimulationResult(
+				world.getCurrentTime() - startTime, steps,
+				System.currentTimeMillis() - wallStart);
+		for (VehicleConsumerEvaluation evaluation : world.getEvaluations()) {
+			result.addConsumerStatistics(evaluation);
+		}
+		return result;
+	}
+
+	public double getUpdateStep() {
+		return update_step;
+	}
+
+	public SimulationWorld getWorld() {
+		return world;
+	}
+
+	public UpdateMode getUpdateMode() {
+		return update_mode;
+	}
+
+	public void setUpdateMode(UpdateMode mode) {
+		this.update_mode = mode;
+	}
+}
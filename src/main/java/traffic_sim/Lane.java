@@ -1,8 +1,13 @@
 package traffic_sim;
 
 import java.awt.*;
-import java.awt.geom.Line2D;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 /**
  * A Traffic Lane.
@@ -17,8 +22,12 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class Lane extends TemporalTrafficObject implements Drawable {
 
     private String name;
+    // Id of the lane in the VehicleStateStore.
+    private final int id;
     // Minimum distance between cars
     protected static double min_car_distance = 10;
+    // Stroke used for drawing lanes.
+    private static final BasicStroke LANE_STROKE = new BasicStroke(30, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
     // Start of the lane
     protected VehicleProducerInterface start_connection;
     // End of the lane
@@ -28,8 +37,29 @@ public class Lane extends TemporalTrafficObject implements Drawable {
     // from the end of the lane (the car which entered first is evaluated first)
     // and the position of the last car is registered.
     protected double length, free_until;
-    // All cars inside the lane.
-    protected ConcurrentLinkedQueue<Vehicle> vehiclesOnLane = new ConcurrentLinkedQueue<>();
+    // State of the cars (positions, velocities ...) is kept in the store.
+    protected final VehicleStateStore store;
+    // All cars inside the lane, ordered by position: the car which entered first
+    // (closest to the end of the lane) comes first.
+    // The slots of the cars are stored in a ring buffer indexed by a sequence number
+    // that each car gets when entering the lane - the car in front of a car is
+    // therefore found directly at the previous sequence number.
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] orderedSlots = new int[INITIAL_CAPACITY];
+    private long head_sequence = 0, tail_sequence = 0;
+    // Slot of the car which reached the end of the lane during computeStep
+    // and has to be handed over in commitStep (-1 if there is none).
+    private int pending_exit = -1;
+    // Objects observing the lane (sensors) - woken up together with the lane
+    // when a car enters the lane in the event driven mode.
+    private final List<TemporalTrafficObject> dependents = new ArrayList<>();
+    // Detectors at fixed positions of the lane (ascending) - called when a car passes.
+    private double[] detector_positions = new double[0];
+    private CrossingListener[] detectors = new CrossingListener[0];
+    // Read only view on the cars inside the lane (in order) for sensors and visualization.
+    protected final Collection<Vehicle> vehiclesOnLane = new OrderedVehicleView();
+    // Random source for the choice of the next lane of cars leaving the lane.
+    private final Random random = world.newRandom();
 
     /**
      * Constructor for a Lane, needs name, start and end connection.
@@ -37,6 +67,8 @@ public class Lane extends TemporalTrafficObject implements Drawable {
     public Lane(String name, VehicleProducerInterface prod, VehicleConsumerInterface cons) {
         super();
         this.name = name;
+        this.store = world.getVehicleStateStore();
+        this.id = store.registerLane(this);
         this.start_connection = prod;
         this.start_connection.setLaneStarting(this);
         this.end_connection = cons;
@@ -52,9 +84,109 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      * Add a vehicle to the lane at the beginning of the lane.
      */
     public void addVehicleToLane(Vehicle veh) {
-        vehiclesOnLane.add(veh);
+        if (tail_sequence - head_sequence == orderedSlots.length) {
+            growOrderedSlots();
+        }
+        int vehSlot = veh.getSlot();
+        orderedSlots[slot(tail_sequence)] = vehSlot;
+        store.lane_sequence[vehSlot] = tail_sequence;
+        tail_sequence++;
         veh.setCurrentLane(this);
         free_until = 0;
+        // The car passed the detectors up to its position when entering the lane.
+        passDetectors(vehSlot, Double.NEGATIVE_INFINITY, store.position[vehSlot], 0.);
+        wakeUp();
+        for (TemporalTrafficObject dependent : dependents) {
+            dependent.wakeUp();
+        }
+    }
+
+    /**
+     * Choose the lane a car leaving this lane enters next - randomly
+     * (or as recorded when the world replays a recording).
+     */
+    public Lane chooseNextLane(List<Lane> lanes) {
+        SimulationRecording recording = world.getRecording();
+        int choice = (recording != null) ? recording.chooseLane(id, lanes.size(), random)
+                : random.nextInt(lanes.size());
+        return lanes.get(choice);
+    }
+
+    /**
+     * Register an object observing this lane. It is woken up whenever
+     * a car enters the lane (event driven mode).
+     */
+    public void addDependent(TemporalTrafficObject dependent) {
+        if (!dependents.contains(dependent)) {
+            dependents.add(dependent);
+        }
+    }
+
+    /**
+     * Register a detector at a position of the lane (cut to the lane). It is called
+     * for every car passing the position - including cars entering the lane behind it.
+     */
+    public void addDetector(double position, CrossingListener listener) {
+        position = Math.max(0., Math.min(position, length));
+        int n = detectors.length;
+        int index = 0;
+        while (index < n && detector_positions[index] <= position) {
+            index++;
+        }
+        double[] positions = new double[n + 1];
+        CrossingListener[] listeners = new CrossingListener[n + 1];
+        System.arraycopy(detector_positions, 0, positions, 0, index);
+        System.arraycopy(detectors, 0, listeners, 0, index);
+        positions[index] = position;
+        listeners[index] = listener;
+        System.arraycopy(detector_positions, index, positions, index + 1, n - index);
+        System.arraycopy(detectors, index, listeners, index + 1, n - index);
+        detector_positions = positions;
+        detectors = listeners;
+    }
+
+    /**
+     * Notify the detectors with a position in (from, to] that the car passed them.
+     * The car moved from from to to in the given duration starting at the current time,
+     * the time of each crossing is interpolated (duration 0: the car jumped).
+     */
+    void passDetectors(int vehSlot, double from, double to, double duration) {
+        int n = detectors.length;
+        if (n == 0 || !(to > from)) {
+            return;
+        }
+        // First detector behind from.
+        int low = 0, high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (detector_positions[mid] > from) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        if (low == n || detector_positions[low] > to) {
+            return;
+        }
+        double start = world.getCurrentTime();
+        boolean interpolate = duration > 0. && !Double.isInfinite(from);
+        double velocity = interpolate ? (to - from) / duration : store.velocity[vehSlot];
+        Vehicle vehicle = store.vehicles[vehSlot];
+        for (int i = low; i < n && detector_positions[i] <= to; i++) {
+            double time = interpolate ? start + duration * (detector_positions[i] - from) / (to - from) : start;
+            detectors[i].vehicleCrossed(vehicle, time, velocity);
+        }
+    }
+
+    /**
+     * An empty lane does not require updates until a car enters the lane.
+     */
+    @Override
+    public double getNextEventTime() {
+        if ((tail_sequence == head_sequence) && (pending_exit < 0)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return super.getNextEventTime();
     }
 
     /**
@@ -62,6 +194,7 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      */
     public void setEndConnection(VehicleConsumer consumer) {
         this.end_connection = consumer;
+        store.networkChanged();
     }
 
     /**
@@ -69,35 +202,138 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      */
     public void setStartConnection(VehicleProducer producer) {
         this.start_connection = producer;
+        store.networkChanged();
     }
 
     /**
-     * Update simulation step.
+     * Update simulation step - both phases of the two phase update.
+     */
+    public void updateStep(double duration) {
+        computeStep(duration);
+        commitStep(duration);
+    }
+
+    /**
+     * First phase of the two phase update.
      * <p>
      * Starting from the end of the lane and iterating over the different cars:
-     * vehicle positions are updated
+     * vehicle positions are updated (directly on the arrays of the VehicleStateStore).
+     * A car reaching the end of the lane is not yet handed over to the end connection
+     * (it is kept at the end of the lane). Only the cars of this lane are touched.
      */
-    public void updateStep(double duration) {
-        //System.out.println("Update Lane " + vehiclesOnLane + " - " + this.name);
+    @Override
+    public void computeStep(double duration) {
         // free_until indicates how far back the end of the traffic is and is used to
         // calculate how far a car is allowed to move.
         free_until = length;
-        for (Vehicle vehicleUpdate : vehiclesOnLane) {
-            //tryToMoveVehicle(vehicleUpdate, duration); //<-Uncomment this line to get old behaviour
-            vehicleUpdate.update(duration); //<- Comment this out to get old behaviour
+        for (long seq = head_sequence; seq < tail_sequence; seq++) {
+            int vehSlot = orderedSlots[slot(seq)];
+            if (store.has_destination[vehSlot]) {
+                store.vehicles[vehSlot].updateDestination(duration);
+            }
+            moveVehicle(seq, vehSlot, duration, true);
+        }
+    }
+
+    /**
+     * Second phase of the two phase update: the car which reached the end of the lane
+     * is handed over to the end connection - if that is not possible, it stops.
+     */
+    @Override
+    public void commitStep(double duration) {
+        if (pending_exit >= 0) {
+            int vehSlot = pending_exit;
+            pending_exit = -1;
+            if (!end_connection.tryToConsumeVehicle(store.vehicles[vehSlot])) {
+                store.velocity[vehSlot] = 0;
+            }
+        }
+    }
+
+    /**
+     * Move a single car along the lane.
+     * <p>
+     * The car accelerates if possible, keeps its distance to the car in front and
+     * at the end of the lane it is handed over to the end connection.
+     *
+     * @param seq Sequence number of the car in this lane
+     * @param vehSlot Slot of the car in the VehicleStateStore
+     * @param duration Elapsed time
+     * @param deferExit Do not hand over the car at the end of the lane but remember
+     *                  it for commitStep
+     */
+    void moveVehicle(long seq, int vehSlot, double duration, boolean deferExit) {
+        double[] position = store.position;
+        int leader = (seq > head_sequence) ? orderedSlots[slot(seq - 1)] : -1;
+        //Try to accelerate all the time
+        accelerateVehicle(seq, vehSlot, duration);
+        double driven_delta = currentVelocity(seq, vehSlot) * duration;
+        //If vehicle gets to close to preceding vehicle, decelerate and hold some distance
+        if (leader >= 0) {
+            double front_distance = Math.abs(position[leader] - position[vehSlot]);
+            if (driven_delta > front_distance - min_car_distance) {
+                store.decelerate(vehSlot, currentVelocity(seq - 1, leader));
+                driven_delta = front_distance - min_car_distance;
+            }
+        }
+        double new_pos = position[vehSlot] + driven_delta;
+        // Before the car might leave the lane (and the simulation).
+        passDetectors(vehSlot, position[vehSlot], new_pos, duration);
+        if (new_pos >= length) {
+            store.remaining[vehSlot] = new_pos - length;
+            if (deferExit) {
+                // Following cars keep their distance to this car at the end of the lane.
+                store.position[vehSlot] = length;
+                if (pending_exit < 0) {
+                    pending_exit = vehSlot;
+                } else {
+                    store.velocity[vehSlot] = 0;
+                }
+            } else if (!end_connection.tryToConsumeVehicle(store.vehicles[vehSlot])) {
+                store.velocity[vehSlot] = 0;
+                store.position[vehSlot] = length;
+            }
+        } else {
+            position[vehSlot] = new_pos;
+            free_until = new_pos - min_car_distance;
+        }
+    }
+
+    /**
+     * Accelerate a car. New velocity is determined by its acceleration and the elapsed time.
+     * If the car ahead is too close the car does not accelerate.
+     */
+    void accelerateVehicle(long seq, int vehSlot, double duration) {
+        double[] position = store.position;
+        if ((seq == head_sequence) || (Math.abs(position[orderedSlots[slot(seq - 1)]]
+                - position[vehSlot]) >= 2 * min_car_distance)) {
+            double velocity = store.velocity[vehSlot] + duration * store.acceleration[vehSlot];
+            store.velocity[vehSlot] = velocity > store.max_velocity[vehSlot] ?
+                    store.max_velocity[vehSlot] : velocity;
+        }
+    }
+
+    /**
+     * Current target velocity of a car. If the car ahead is too close the velocity
+     * is reduced to the velocity of that car.
+     */
+    double currentVelocity(long seq, int vehSlot) {
+        if (seq > head_sequence) {
+            int leader = orderedSlots[slot(seq - 1)];
+            if (Math.abs(store.position[leader] - store.position[vehSlot]) < 1.5 * min_car_distance) {
+                store.decelerate(vehSlot, currentVelocity(seq - 1, leader));
+            }
         }
+        return store.velocity[vehSlot];
     }
 
     @Override
     public void redraw(Graphics2D g2d) {
-        // Draw the lane
-        g2d.setPaint(Color.gray);
-        Point start = this.start_connection.getStartPoint();
-        Point end = this.end_connection.getEndPoint();
-        g2d.setStroke(new BasicStroke(30, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
-        g2d.draw(new Line2D.Float(start.x, start.y, end.x, end.y));
+        redrawStatic(g2d);
 
         // Draw vehicles on the lane as blue rectangles.
+        Point start = this.start_connection.getStartPoint();
+        Point end = this.end_connection.getEndPoint();
         g2d.setPaint(Color.blue);
         for (Vehicle veh : this.vehiclesOnLane) {
             double posPerc = veh.getPositionInLane() / this.getLength();
@@ -107,6 +343,52 @@ public class Lane extends TemporalTrafficObject implements Drawable {
         }
     }
 
+    /**
+     * Draw the lane itself (without the vehicles).
+     */
+    @Override
+    public void redrawStatic(Graphics2D g2d) {
+        g2d.setPaint(Color.gray);
+        Point start = this.start_connection.getStartPoint();
+        Point end = this.end_connection.getEndPoint();
+        g2d.setStroke(LANE_STROKE);
+        g2d.drawLine(start.x, start.y, end.x, end.y);
+    }
+
+    /**
+     * Add the positions of the vehicles on the lane to the snapshot.
+     */
+    @Override
+    public void snapshot(SceneSnapshot.Builder snapshot) {
+        Point start = this.start_connection.getStartPoint();
+        Point end = this.end_connection.getEndPoint();
+        if (!snapshot.isDrawingVehicles()) {
+            // Zoomed out: only the share of the lane occupied by cars.
+            double occupancy = (tail_sequence - head_sequence) * min_car_distance / length;
+            snapshot.addLaneDensity(start.x, start.y, end.x, end.y, (float) Math.min(occupancy, 1.));
+            return;
+        }
+        for (long seq = head_sequence; seq < tail_sequence; seq++) {
+            double posPerc = store.position[orderedSlots[slot(seq)]] / length;
+            snapshot.addVehicle((float) (start.x * (1 - posPerc) + end.x * posPerc),
+                    (float) (start.y * (1 - posPerc) + end.y * posPerc));
+        }
+    }
+
+    /**
+     * Bounds of the drawn lane (including its width).
+     */
+    @Override
+    public Rectangle getBounds() {
+        Point start = this.start_connection.getStartPoint();
+        Point end = this.end_connection.getEndPoint();
+        int half_width = (int) Math.ceil(LANE_STROKE.getLineWidth() / 2);
+        Rectangle bounds = new Rectangle(start);
+        bounds.add(end);
+        bounds.grow(half_width, half_width);
+        return bounds;
+    }
+
     @Override
     public Integer priority() {
         return 1;
@@ -119,19 +401,23 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      * or (at the end of the lane) if it can leave the lane.
      */
     public void tryToMoveVehicle(Vehicle vehicle, double duration) {
-        double newPos = vehicle.getPositionInLane() + vehicle.getCurrentVelocity() * duration;
+        int vehSlot = vehicle.getSlot();
+        double oldPos = store.position[vehSlot];
+        double newPos = oldPos + vehicle.getCurrentVelocity() * duration;
         if ((newPos > length) && (free_until == length)) {
+            passDetectors(vehSlot, oldPos, newPos, duration);
             if (!(end_connection.tryToConsumeVehicle(vehicle))) {
                 newPos = length;
                 free_until = length - min_car_distance;
-                vehicle.setPositionInLane(newPos);
+                store.position[vehSlot] = newPos;
             }
         } else {
             if (newPos > free_until) {
                 newPos = free_until;
             }
             free_until = newPos - min_car_distance;
-            vehicle.setPositionInLane(newPos);
+            passDetectors(vehSlot, oldPos, newPos, duration);
+            store.position[vehSlot] = newPos;
         }
     }
 
@@ -150,7 +436,55 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      * Remove vehicle from Lane.
      */
     protected void removeVehicleFromLane(Vehicle veh) {
-        vehiclesOnLane.remove(veh);
+        if (!isOnLane(veh)) {
+            return;
+        }
+        long seq = store.lane_sequence[veh.getSlot()];
+        if (seq == head_sequence) {
+            // Usual case: the first car leaves the lane at the end.
+            orderedSlots[slot(seq)] = -1;
+            head_sequence++;
+        } else {
+            // Close the gap: all following cars move up one sequence number.
+            for (long following = seq; following < tail_sequence - 1; following++) {
+                int moved = orderedSlots[slot(following + 1)];
+                orderedSlots[slot(following)] = moved;
+                store.lane_sequence[moved] = following;
+            }
+            tail_sequence--;
+            orderedSlots[slot(tail_sequence)] = -1;
+        }
+    }
+
+    /**
+     * Check if the vehicle currently is on this lane.
+     */
+    private boolean isOnLane(Vehicle veh) {
+        int vehSlot = veh.getSlot();
+        if ((vehSlot < 0) || (store.lane_id[vehSlot] != id)) {
+            return false;
+        }
+        long seq = store.lane_sequence[vehSlot];
+        return (seq >= head_sequence) && (seq < tail_sequence)
+                && (orderedSlots[slot(seq)] == vehSlot);
+    }
+
+    /**
+     * Position in the ring buffer for a sequence number.
+     */
+    private int slot(long seq) {
+        return (int) (seq & (orderedSlots.length - 1));
+    }
+
+    /**
+     * Double the capacity of the ring buffer (the capacity is kept a power of two).
+     */
+    private void growOrderedSlots() {
+        int[] grown = new int[orderedSlots.length * 2];
+        for (long seq = head_sequence; seq < tail_sequence; seq++) {
+            grown[(int) (seq & (grown.length - 1))] = orderedSlots[slot(seq)];
+        }
+        orderedSlots = grown;
     }
 
     /**
@@ -176,20 +510,30 @@ public class Lane extends TemporalTrafficObject implements Drawable {
 
 	/**
      * Returns the vehicle in front of the given one, null if there is none.
+     * The handle is valid until the vehicle leaves the simulation (see Vehicle).
      * @param vehicle The vehicle
      * @return The vehicle in front of the given vehicle or null if there is none in front
      */
     public Vehicle getVehicleInFront(Vehicle vehicle) {
-        Vehicle inFront = null;
-        for (Vehicle v : vehiclesOnLane) {
-            if (v.equals(vehicle)) {
-                break;
-            }
-            else {
-                inFront = v;
-            }
+        long seq = store.lane_sequence[vehicle.checkSlot()];
+        if (seq > head_sequence) {
+            return store.vehicles[orderedSlots[slot(seq - 1)]];
+        }
+        return null;
+    }
+
+	/**
+     * Returns the vehicle behind the given one, null if there is none.
+     * The handle is valid until the vehicle leaves the simulation (see Vehicle).
+     * @param vehicle The vehicle
+     * @return The vehicle behind the given vehicle or null if there is none behind
+     */
+    public Vehicle getVehicleBehind(Vehicle vehicle) {
+        long seq = store.lane_sequence[vehicle.checkSlot()];
+        if (seq + 1 < tail_sequence) {
+            return store.vehicles[orderedSlots[slot(seq + 1)]];
         }
-        return inFront;
+        return null;
     }
 
 	/**
@@ -198,22 +542,114 @@ public class Lane extends TemporalTrafficObject implements Drawable {
      * @return Number of vehicles in front of the given one
      */
     public int getVehicleNumberInFront(Vehicle vehicle) {
-        int inFront = 0;
-        for (Vehicle v : vehiclesOnLane) {
-            if (v.equals(vehicle)) {
-                break;
+        return (int) (store.lane_sequence[vehicle.checkSlot()] - head_sequence);
+    }
+
+    /**
+     * Copy the cars with a position inside [from, to] into the sample (ordered from
+     * the end of the lane backwards). The cars are ordered by position, so the range
+     * is found by two binary searches instead of looking at every car on the lane.
+     */
+    void sampleWindow(double from, double to, LaneSensor.Sample sample) {
+        sample.clear();
+        long first = firstSequenceBelow(to, false);
+        long end = firstSequenceBelow(from, true);
+        for (long seq = first; seq < end; seq++) {
+            int vehSlot = orderedSlots[slot(seq)];
+            sample.add(store.vehicles[vehSlot], store.position[vehSlot], currentVelocity(seq, vehSlot));
+        }
+    }
+
+    /**
+     * First sequence number with a position below the given one (or equal to it,
+     * if not strict) - tail_sequence if there is none.
+     */
+    private long firstSequenceBelow(double pos, boolean strict) {
+        long low = head_sequence, high = tail_sequence;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            double midPos = store.position[orderedSlots[slot(mid)]];
+            if (strict ? (midPos < pos) : (midPos <= pos)) {
+                high = mid;
             } else {
-                inFront++;
+                low = mid + 1;
             }
         }
-        return inFront;
+        return low;
     }
 
-    public ConcurrentLinkedQueue<Vehicle> getVehiclesOnLane() {
+    /**
+     * Returns the cars on the lane, ordered from the end of the lane backwards.
+     * The returned collection is a read only view. The handles are valid until the
+     * vehicles leave the simulation - they are reused by the VehiclePool (see Vehicle).
+     */
+    public Collection<Vehicle> getVehiclesOnLane() {
     	return vehiclesOnLane;
     }
 
     public String getName() {
         return name;
     }
-}
\ No newline at end of file
+
+    /**
+     * Id of the lane in the VehicleStateStore.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Read only view on the ring buffer of the cars.
+     * <p>
+     * The visualization iterates over the cars from the event dispatch thread,
+     * the iterator therefore only reads the buffer and skips cars which left in between.
+     */
+    private class OrderedVehicleView extends AbstractCollection<Vehicle> {
+
+        @Override
+        public int size() {
+            return (int) (tail_sequence - head_sequence);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Vehicle) && isOnLane((Vehicle) o);
+        }
+
+        @Override
+        public Iterator<Vehicle> iterator() {
+            return new Iterator<Vehicle>() {
+                private final int[] buffer = orderedSlots;
+                private final long end = tail_sequence;
+                private long seq = head_sequence;
+                private Vehicle next = advance();
+
+                private Vehicle advance() {
+                    Vehicle[] vehicles = store.vehicles;
+                    while (seq < end) {
+                        int vehSlot = buffer[(int) (seq++ & (buffer.length - 1))];
+                        if ((vehSlot >= 0) && (vehSlot < vehicles.length) && (vehicles[vehSlot] != null)) {
+                            return vehicles[vehSlot];
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Vehicle next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Vehicle current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+    }
+}
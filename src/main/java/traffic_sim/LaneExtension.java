@@ -50,6 +50,7 @@ public class LaneExtension implements VehicleConsumerInterface,
 	public boolean tryToConsumeVehicle(Vehicle veh) {
 		int numberOfOutgoingLanes = outgoingLanes.size();
 		if (numberOfOutgoingLanes > 0) {
+			// Vehicles with a destination are routed by the routing table of the world.
 			return veh.switchToLane(outgoingLanes);
 		} else {
 			veh.removeVehicleFromLane();
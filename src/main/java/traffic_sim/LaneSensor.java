@@ -0,0 +1,143 @@
+package traffic_sim;
+
+import java.util.Arrays;
+
+/**
+ * LaneSensor
+ *
+ * Base class of sensors observing a window of a lane (from a start to an end position).
+ * In each update the lane hands over only the vehicles inside the window - the cars
+ * on a lane are ordered by position, so the window is found by a binary search and
+ * copied into a Sample (positions and velocities in arrays) that the sensor processes
+ * in a simple loop, e.g. with all noise drawn at once.
+ *
+ * A sensor at a point of the lane (like an induction loop) does not need the window:
+ * it registers itself as detector at the start of its window (detectCrossings()) and
+ * gets each car passing with the exact time and speed. Such a sensor can switch off
+ * the sampling of the window (samplesWindow()) - sense() gets an empty sample then.
+ *
+ * A sensor is woken up by its lane when a car enters the lane (event driven mode) and
+ * sleeps while the lane is empty and the sensor is idle.
+ */
+public abstract class LaneSensor extends TemporalTrafficObject implements CrossingListener {
+
+	/**
+	 * The vehicles inside the window of a sensor, ordered from the end of the lane.
+	 * Reused in every update.
+	 */
+	public static final class Sample {
+		private int size = 0;
+		private Vehicle[] vehicles = new Vehicle[16];
+		private double[] positions = new double[16];
+		private double[] velocities = new double[16];
+
+		void clear() {
+			size = 0;
+		}
+
+		void add(Vehicle vehicle, double position, double velocity) {
+			if (size == vehicles.length) {
+				vehicles = Arrays.copyOf(vehicles, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+				velocities = Arrays.copyOf(velocities, size * 2);
+			}
+			vehicles[size] = vehicle;
+			positions[size] = position;
+			velocities[size] = velocity;
+			size++;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/*
+		 * The vehicle - the handle is valid until the vehicle leaves the simulation (see Vehicle).
+		 */
+		public Vehicle getVehicle(int i) {
+			return vehicles[i];
+		}
+
+		public double getPosition(int i) {
+			return positions[i];
+		}
+
+		/*
+		 * Current (target) velocity of the vehicle.
+		 */
+		public double getVelocity(int i) {
+			return velocities[i];
+		}
+	}
+
+	protected final Lane lane;
+	// The observed window of the lane.
+	protected final double window_start, window_end;
+	private final Sample sample = new Sample();
+
+	/**
+	 * @param lane The observed lane
+	 * @param windowStart Start of the observed window (cut to the lane)
+	 * @param windowEnd End of the observed window (cut to the lane)
+	 */
+	protected LaneSensor(Lane lane, double windowStart, double windowEnd) {
+		this.lane = lane;
+		this.window_start = Math.max(0., Math.min(windowStart, lane.getLength()));
+		this.window_end = Math.max(window_start, Math.min(windowEnd, lane.getLength()));
+		lane.addDependent(this);
+	}
+
+	/*
+	 * Register the sensor as detector of the lane at the start of its window.
+	 */
+	protected void detectCrossings() {
+		lane.addDetector(window_start, this);
+	}
+
+	/**
+	 * A car passed the start of the window - only called when the sensor
+	 * detects crossings (see detectCrossings()).
+	 */
+	@Override
+	public void vehicleCrossed(Vehicle vehicle, double time, double velocity) {
+	}
+
+	/**
+	 * Are the vehicles inside the window handed over to sense()?
+	 */
+	protected boolean samplesWindow() {
+		return true;
+	}
+
+	@Override
+	public void updateStep(double duration) {
+		if (samplesWindow()) {
+			lane.sampleWindow(window_start, window_end, sample);
+		} else {
+			sample.clear();
+		}
+		sense(sample, duration);
+	}
+
+	/**
+	 * Process the vehicles inside the window in an update step.
+	 */
+	protected abstract void sense(Sample sample, double duration);
+
+	/**
+	 * Has the sensor nothing to do until a car enters the lane?
+	 */
+	protected abstract boolean isIdle();
+
+	@Override
+	public double getNextEventTime() {
+		if (lane.getVehiclesOnLane().isEmpty() && isIdle()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return super.getNextEventTime();
+	}
+
+	public Lane getLane() {
+		return lane;
+	}
+}
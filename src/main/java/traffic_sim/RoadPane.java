@@ -1,55 +1,285 @@
 package traffic_sim;
 
 import java.awt.*;
-import java.awt.geom.Rectangle2D;
-import java.awt.geom.Line2D;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.PriorityQueue;
-import java.util.TreeSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JPanel;
 
 /**
  * RoadPane
- * 
+ *
  * Simple visualization of the traffic scene.
+ *
+ * The simulation thread publishes snapshots of the scene (publishSnapshot()). A render
+ * thread draws the latest snapshot into a back buffer on top of the static layer (the
+ * road network, drawn once) and swaps it with the front buffer, which is shown by
+ * paintComponent. Neither the simulation thread nor the event dispatch thread waits
+ * for the drawing - snapshots which are published while the render thread is busy
+ * are skipped.
+ *
+ * The view can be zoomed (mouse wheel) and moved (dragging). Only drawables intersecting
+ * the visible area are drawn and put into snapshots (using a SpatialGrid) and when zoomed
+ * out the density of the cars on the lanes is shown instead of the single vehicles.
  */
 public class RoadPane extends JPanel {
-	private Collection<Drawable> drawables;
-	
+	// Drawables ordered by priority (equal priorities in the order they were added).
+	private final List<Drawable> drawables = new ArrayList<>();
+	// Spatial index of the drawables - built again after drawables are added.
+	private volatile SpatialGrid grid;
+
+	// Below this scale only the density of the cars on the lanes is shown.
+	private static final double DENSITY_SCALE = 0.5;
+	private static final double MIN_SCALE = 0.01, MAX_SCALE = 10.;
+	private static final double ZOOM_FACTOR = 1.1;
+	// Snapshots contain the drawables around the visible area as well (this share of
+	// its size on each side), so that moving the view shows the last snapshot correctly
+	// until the next one is published.
+	private static final double SNAPSHOT_MARGIN = 0.25;
+	private volatile Viewport viewport = new Viewport(1., 0., 0.);
+
+	// Used on the simulation thread only.
+	private final SceneSnapshot.Builder snapshotBuilder = new SceneSnapshot.Builder();
+	private final BitSet snapshotDrawables = new BitSet();
+	// The latest published snapshot which is not drawn yet - and the last drawn one.
+	private final AtomicReference<SceneSnapshot> pendingSnapshot = new AtomicReference<>();
+	private volatile SceneSnapshot lastSnapshot;
+	private final AtomicBoolean renderScheduled = new AtomicBoolean(false);
+	private final ExecutorService renderer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "RoadPane renderer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// Static layer and back buffer are only used by the render thread.
+	private BufferedImage staticLayer, backBuffer;
+	private Viewport staticViewport;
+	private final BitSet staticDrawables = new BitSet();
+	private volatile boolean staticLayerValid = false;
+	// The front buffer is swapped by the render thread and shown by the event dispatch thread.
+	private final Object frontBufferLock = new Object();
+	private BufferedImage frontBuffer;
+
+	/**
+	 * Scale and offset of the view: screen = scene * scale + offset.
+	 */
+	private static final class Viewport {
+		final double scale, offsetX, offsetY;
+
+		Viewport(double scale, double offsetX, double offsetY) {
+			this.scale = scale;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+		}
+
+		/*
+		 * The visible area of the scene.
+		 */
+		Rectangle visibleArea(int width, int height) {
+			return new Rectangle((int) Math.floor(-offsetX / scale), (int) Math.floor(-offsetY / scale),
+					(int) Math.ceil(width / scale) + 1, (int) Math.ceil(height / scale) + 1);
+		}
+	}
+
 	/**
 	 * Construct a visualization.
      */
 	public RoadPane() {
-		drawables = new PriorityQueue<>(new DrawableComparator());
+		MouseAdapter navigation = new MouseAdapter() {
+			private Point dragStart;
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragStart = e.getPoint();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				Viewport current = viewport;
+				setViewport(new Viewport(current.scale, current.offsetX + e.getX() - dragStart.x,
+						current.offsetY + e.getY() - dragStart.y));
+				dragStart = e.getPoint();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				Viewport current = viewport;
+				double scale = current.scale * Math.pow(ZOOM_FACTOR, -e.getPreciseWheelRotation());
+				scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+				// Zoom around the mouse position.
+				double factor = scale / current.scale;
+				setViewport(new Viewport(scale, e.getX() - (e.getX() - current.offsetX) * factor,
+						e.getY() - (e.getY() - current.offsetY) * factor));
+			}
+		};
+		addMouseListener(navigation);
+		addMouseMotionListener(navigation);
+		addMouseWheelListener(navigation);
 	}
-	
+
 	@Override
 	public Dimension getPreferredSize() {
 		return new Dimension(800, 350);
 	}
 
+	/**
+	 * Zoom and move the view: screen = scene * scale + offset.
+	 */
+	public void setView(double scale, double offsetX, double offsetY) {
+		setViewport(new Viewport(Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale)), offsetX, offsetY));
+	}
+
+	public double getScale() {
+		return viewport.scale;
+	}
+
+	private void setViewport(Viewport newViewport) {
+		viewport = newViewport;
+		// Show the last snapshot in the new view until the next one is published
+		// (which is taken for the new view - the last one only covers the margin
+		// around the old view).
+		SceneSnapshot last = lastSnapshot;
+		if (last != null) {
+			pendingSnapshot.compareAndSet(null, last);
+			scheduleRendering();
+		}
+	}
+
 	/**
  	 * paintComponent describes the visualization -
  	 * is called through the repaint() call.
+ 	 * Shows the last rendered frame.
  	 */
 	@Override
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		Graphics2D g2d = (Graphics2D) g.create();
-		for (Drawable drawable : drawables) {
-			drawable.redraw(g2d);
+		synchronized (frontBufferLock) {
+			if (frontBuffer != null) {
+				g.drawImage(frontBuffer, 0, 0, null);
+			}
+		}
+	}
+
+	/**
+	 * Take a snapshot of the visible part of the scene and hand it to the render thread.
+	 * Has to be called on the simulation thread (between update steps).
+	 */
+	public void publishSnapshot(double time) {
+		Viewport view = viewport;
+		SpatialGrid index = getGrid();
+		snapshotDrawables.clear();
+		Rectangle area = view.visibleArea(Math.max(getWidth(), 1), Math.max(getHeight(), 1));
+		area.grow((int) Math.ceil(area.width * SNAPSHOT_MARGIN), (int) Math.ceil(area.height * SNAPSHOT_MARGIN));
+		index.query(area, snapshotDrawables);
+		snapshotBuilder.setDrawingVehicles(view.scale >= DENSITY_SCALE);
+		for (int i = snapshotDrawables.nextSetBit(0); i >= 0; i = snapshotDrawables.nextSetBit(i + 1)) {
+			index.get(i).snapshot(snapshotBuilder);
+		}
+		pendingSnapshot.set(snapshotBuilder.build(time));
+		scheduleRendering();
+	}
+
+	private void scheduleRendering() {
+		if (renderScheduled.compareAndSet(false, true)) {
+			renderer.execute(this::renderPendingSnapshot);
 		}
+	}
 
-		g2d.dispose();			
+	private SpatialGrid getGrid() {
+		SpatialGrid index = grid;
+		if (index == null) {
+			synchronized (drawables) {
+				index = new SpatialGrid(drawables);
+			}
+			grid = index;
+		}
+		return index;
+	}
+
+	/*
+	 * Draw the latest snapshot into the back buffer and show it (on the render thread).
+	 */
+	private void renderPendingSnapshot() {
+		renderScheduled.set(false);
+		SceneSnapshot snapshot = pendingSnapshot.getAndSet(null);
+		int width = getWidth(), height = getHeight();
+		if ((snapshot == null) || (width <= 0) || (height <= 0)) {
+			return;
+		}
+		lastSnapshot = snapshot;
+		Viewport view = viewport;
+		if (!staticLayerValid || (staticViewport != view) || !hasSize(staticLayer, width, height)) {
+			renderStaticLayer(view, width, height);
+		}
+		if (!hasSize(backBuffer, width, height)) {
+			backBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g2d = backBuffer.createGraphics();
+		g2d.drawImage(staticLayer, 0, 0, null);
+		snapshot.redraw(g2d, view.scale, view.offsetX, view.offsetY);
+		g2d.dispose();
+		synchronized (frontBufferLock) {
+			BufferedImage shown = frontBuffer;
+			frontBuffer = backBuffer;
+			backBuffer = shown;
+		}
+		repaint();
+	}
+
+	/*
+	 * Draw the visible static parts of the drawables.
+	 */
+	private void renderStaticLayer(Viewport view, int width, int height) {
+		staticLayerValid = true;
+		staticViewport = view;
+		if (!hasSize(staticLayer, width, height)) {
+			staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g2d = staticLayer.createGraphics();
+		g2d.setColor(getBackground());
+		g2d.fillRect(0, 0, width, height);
+		g2d.translate(view.offsetX, view.offsetY);
+		g2d.scale(view.scale, view.scale);
+		SpatialGrid index = getGrid();
+		staticDrawables.clear();
+		index.query(view.visibleArea(width, height), staticDrawables);
+		for (int i = staticDrawables.nextSetBit(0); i >= 0; i = staticDrawables.nextSetBit(i + 1)) {
+			index.get(i).redrawStatic(g2d);
+		}
+		g2d.dispose();
+	}
+
+	private static boolean hasSize(BufferedImage image, int width, int height) {
+		return (image != null) && (image.getWidth() == width) && (image.getHeight() == height);
 	}
 
 	public void addDrawable(Drawable d){
-		this.drawables.add(d);
+		addAllDrawables(Collections.singletonList(d));
 	}
 
 	public void addAllDrawables(Drawable... drawables){
-		Collections.addAll(this.drawables, drawables);
+		addAllDrawables(java.util.Arrays.asList(drawables));
+	}
+
+	/*
+	 * The drawables are kept sorted by priority (the sort is stable).
+	 */
+	public void addAllDrawables(Collection<? extends Drawable> drawables){
+		synchronized (this.drawables) {
+			this.drawables.addAll(drawables);
+			this.drawables.sort(new DrawableComparator());
+			grid = null;
+		}
+		staticLayerValid = false;
 	}
 
-}
\ No newline at end of file
+}
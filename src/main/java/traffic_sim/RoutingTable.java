@@ -0,0 +1,139 @@
+package traffic_sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * RoutingTable
+ *
+ * Next hop tables for vehicles with a destination. The road network is a graph of
+ * lanes: a lane leads to all lanes starting at the connection it ends in (a
+ * LaneExtension, a TrafficLight, a Building ...).
+ *
+ * For each target (the consumer a lane ends in) a shortest path tree over the lane
+ * lengths is computed once, when the target is asked for the first time. Afterwards
+ * the next lane on the way to the target is a lookup by the id of the current lane.
+ * The tables are computed again when lanes were added to the world or connected
+ * differently (Lane.setStartConnection / setEndConnection).
+ */
+public class RoutingTable {
+
+	// No way to the target from this lane.
+	private static final int UNREACHABLE = -1;
+	// The lane ends in the target.
+	private static final int ARRIVED = -2;
+
+	private final VehicleStateStore store;
+	// Version of the road network and number of lanes when the graph was built.
+	private int network_version = -1;
+	private int number_of_lanes;
+	// Successors and predecessors of the lanes (by lane id).
+	private int[][] successors, predecessors;
+	// Next hop of each lane by target.
+	private final Map<VehicleConsumerInterface, int[]> next_hops = new IdentityHashMap<>();
+
+	RoutingTable(VehicleStateStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * The lane leading from the current lane towards the target.
+	 *
+	 * @return The next lane - null if the current lane ends in the target or the
+	 * target can not be reached from the current lane
+	 */
+	public synchronized Lane nextLane(Lane current, VehicleConsumerInterface target) {
+		int next = nextHops(target)[current.getId()];
+		return (next >= 0) ? store.getLane(next) : null;
+	}
+
+	/**
+	 * Can the target be reached from the lane?
+	 */
+	public synchronized boolean isReachable(Lane current, VehicleConsumerInterface target) {
+		return nextHops(target)[current.getId()] != UNREACHABLE;
+	}
+
+	private int[] nextHops(VehicleConsumerInterface target) {
+		if (network_version != store.getNetworkVersion()) {
+			buildGraph();
+		}
+		int[] hops = next_hops.get(target);
+		if (hops == null) {
+			hops = computeNextHops(target);
+			next_hops.put(target, hops);
+		}
+		return hops;
+	}
+
+	/*
+	 * Connect every lane with the lanes starting where it ends.
+	 */
+	private void buildGraph() {
+		network_version = store.getNetworkVersion();
+		number_of_lanes = store.getNumberOfLanes();
+		next_hops.clear();
+		Map<Object, List<Integer>> startingAt = new IdentityHashMap<>();
+		for (int id = 0; id < number_of_lanes; id++) {
+			startingAt.computeIfAbsent(store.getLane(id).start_connection, c -> new ArrayList<>()).add(id);
+		}
+		successors = new int[number_of_lanes][];
+		int[] numberOfPredecessors = new int[number_of_lanes];
+		for (int id = 0; id < number_of_lanes; id++) {
+			List<Integer> next = startingAt.get(store.getLane(id).end_connection);
+			successors[id] = (next == null) ? new int[0] : next.stream().mapToInt(Integer::intValue).toArray();
+			for (int succ : successors[id]) {
+				numberOfPredecessors[succ]++;
+			}
+		}
+		predecessors = new int[number_of_lanes][];
+		for (int id = 0; id < number_of_lanes; id++) {
+			predecessors[id] = new int[numberOfPredecessors[id]];
+		}
+		for (int id = 0; id < number_of_lanes; id++) {
+			for (int succ : successors[id]) {
+				predecessors[succ][--numberOfPredecessors[succ]] = id;
+			}
+		}
+	}
+
+	/*
+	 * Shortest path tree towards the target (Dijkstra backwards from the lanes ending
+	 * in the target, the distance of a lane is its length plus the distance of its next hop).
+	 */
+	private int[] computeNextHops(VehicleConsumerInterface target) {
+		int[] hops = new int[number_of_lanes];
+		Arrays.fill(hops, UNREACHABLE);
+		double[] distance = new double[number_of_lanes];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+		for (int id = 0; id < number_of_lanes; id++) {
+			Lane lane = store.getLane(id);
+			if (lane.end_connection == target) {
+				distance[id] = lane.getLength();
+				hops[id] = ARRIVED;
+				queue.add(new double[] {distance[id], id});
+			}
+		}
+		while (!queue.isEmpty()) {
+			double[] entry = queue.poll();
+			int id = (int) entry[1];
+			if (entry[0] > distance[id]) {
+				continue;
+			}
+			for (int pred : predecessors[id]) {
+				double viaId = store.getLane(pred).getLength() + distance[id];
+				if (viaId < distance[pred]) {
+					distance[pred] = viaId;
+					hops[pred] = id;
+					queue.add(new double[] {viaId, pred});
+				}
+			}
+		}
+		return hops;
+	}
+}
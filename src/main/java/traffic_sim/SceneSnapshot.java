@@ -0,0 +1,196 @@
+package traffic_sim;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * SceneSnapshot
+ *
+ * Immutable state of the moving parts of a scene at one point in time - the positions
+ * of the vehicles and the colors of the traffic lights. A snapshot is taken on the
+ * simulation thread (Drawable.snapshot()) and drawn later on another thread, so the
+ * view never reads the state of the simulation while it is updated.
+ *
+ * When the view is zoomed out a snapshot only contains the density of the cars on
+ * each lane instead of the single vehicles (level of detail).
+ */
+public final class SceneSnapshot {
+
+	private static final int VEHICLE_SIZE = 10;
+	private static final int LIGHT_SIZE = 15;
+	// A vehicle is drawn as a pre-rendered image (faster than filling many ovals) -
+	// the image is rendered again when the size of the vehicles on the screen changes.
+	private static volatile BufferedImage vehicle_sprite = createVehicleSprite(VEHICLE_SIZE);
+
+	private final double time;
+	private final int number_of_vehicles;
+	private final float[] vehicle_x, vehicle_y;
+	private final int number_of_lights;
+	private final int[] light_x, light_y;
+	private final Color[] light_color;
+	private final int number_of_lanes;
+	private final float[] lane_coordinates;
+	private final float[] lane_density;
+
+	private SceneSnapshot(double time, Builder builder) {
+		this.time = time;
+		this.number_of_vehicles = builder.number_of_vehicles;
+		this.vehicle_x = Arrays.copyOf(builder.vehicle_x, number_of_vehicles);
+		this.vehicle_y = Arrays.copyOf(builder.vehicle_y, number_of_vehicles);
+		this.number_of_lights = builder.number_of_lights;
+		this.light_x = Arrays.copyOf(builder.light_x, number_of_lights);
+		this.light_y = Arrays.copyOf(builder.light_y, number_of_lights);
+		this.light_color = Arrays.copyOf(builder.light_color, number_of_lights);
+		this.number_of_lanes = builder.number_of_lanes;
+		this.lane_coordinates = Arrays.copyOf(builder.lane_coordinates, 4 * number_of_lanes);
+		this.lane_density = Arrays.copyOf(builder.lane_density, number_of_lanes);
+	}
+
+	private static BufferedImage createVehicleSprite(int size) {
+		BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = sprite.createGraphics();
+		g2d.setPaint(Color.blue);
+		g2d.fillOval(0, 0, size, size);
+		g2d.dispose();
+		return sprite;
+	}
+
+	/*
+	 * The pre-rendered vehicle with the given size on the screen.
+	 */
+	private static BufferedImage vehicleSprite(int size) {
+		BufferedImage sprite = vehicle_sprite;
+		if (sprite.getWidth() != size) {
+			sprite = createVehicleSprite(size);
+			vehicle_sprite = sprite;
+		}
+		return sprite;
+	}
+
+	/**
+	 * Draw the vehicles and the traffic lights of the snapshot.
+	 */
+	public void redraw(Graphics2D g2d) {
+		redraw(g2d, 1., 0., 0.);
+	}
+
+	/**
+	 * Draw the snapshot scaled and moved - screen = scene * scale + offset.
+	 * The coordinates are transformed here (and not by the graphics) so the pre-rendered
+	 * vehicles can be drawn without scaling - the vehicle is rendered once for each
+	 * size of the vehicles on the screen (not for each frame).
+	 */
+	public void redraw(Graphics2D g2d, double scale, double offsetX, double offsetY) {
+		if (number_of_lanes > 0) {
+			g2d.setStroke(new BasicStroke((float) Math.max(30 * scale, 2.),
+					BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
+			for (int i = 0; i < number_of_lanes; i++) {
+				// From green (empty) to red (full).
+				g2d.setPaint(Color.getHSBColor((1.f - lane_density[i]) / 3.f, 1.f, 0.9f));
+				g2d.drawLine((int) (lane_coordinates[4 * i] * scale + offsetX),
+						(int) (lane_coordinates[4 * i + 1] * scale + offsetY),
+						(int) (lane_coordinates[4 * i + 2] * scale + offsetX),
+						(int) (lane_coordinates[4 * i + 3] * scale + offsetY));
+			}
+		}
+		if (number_of_vehicles > 0) {
+			int size = Math.max((int) Math.round(VEHICLE_SIZE * scale), 1);
+			BufferedImage sprite = vehicleSprite(size);
+			for (int i = 0; i < number_of_vehicles; i++) {
+				g2d.drawImage(sprite, (int) (vehicle_x[i] * scale + offsetX) - (size / 2),
+						(int) (vehicle_y[i] * scale + offsetY) - (size / 2), null);
+			}
+		}
+		int lightSize = Math.max((int) (LIGHT_SIZE * scale), 2);
+		for (int i = 0; i < number_of_lights; i++) {
+			g2d.setPaint(light_color[i]);
+			g2d.fillOval((int) (light_x[i] * scale + offsetX), (int) (light_y[i] * scale + offsetY),
+					lightSize, lightSize);
+		}
+	}
+
+	/*
+	 * Simulation time the snapshot was taken.
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	public int getNumberOfVehicles() {
+		return number_of_vehicles;
+	}
+
+	/**
+	 * Collects the state of the drawables for a snapshot. A builder can be reused:
+	 * build() copies the collected state and clears the builder.
+	 */
+	public static class Builder {
+		private int number_of_vehicles = 0;
+		private float[] vehicle_x = new float[64], vehicle_y = new float[64];
+		private int number_of_lights = 0;
+		private int[] light_x = new int[8], light_y = new int[8];
+		private Color[] light_color = new Color[8];
+		private int number_of_lanes = 0;
+		private float[] lane_coordinates = new float[4 * 16];
+		private float[] lane_density = new float[16];
+		private boolean drawing_vehicles = true;
+
+		/**
+		 * Should the single vehicles be added - or only the density on the lanes?
+		 */
+		public boolean isDrawingVehicles() {
+			return drawing_vehicles;
+		}
+
+		public void setDrawingVehicles(boolean drawingVehicles) {
+			this.drawing_vehicles = drawingVehicles;
+		}
+
+		public void addVehicle(float x, float y) {
+			if (number_of_vehicles == vehicle_x.length) {
+				vehicle_x = Arrays.copyOf(vehicle_x, number_of_vehicles * 2);
+				vehicle_y = Arrays.copyOf(vehicle_y, number_of_vehicles * 2);
+			}
+			vehicle_x[number_of_vehicles] = x;
+			vehicle_y[number_of_vehicles] = y;
+			number_of_vehicles++;
+		}
+
+		public void addTrafficLight(int x, int y, Color color) {
+			if (number_of_lights == light_x.length) {
+				light_x = Arrays.copyOf(light_x, number_of_lights * 2);
+				light_y = Arrays.copyOf(light_y, number_of_lights * 2);
+				light_color = Arrays.copyOf(light_color, number_of_lights * 2);
+			}
+			light_x[number_of_lights] = x;
+			light_y[number_of_lights] = y;
+			light_color[number_of_lights] = color;
+			number_of_lights++;
+		}
+
+		/**
+		 * Add a lane with the share of it occupied by cars (between 0 and 1).
+		 */
+		public void addLaneDensity(float x1, float y1, float x2, float y2, float density) {
+			if (number_of_lanes == lane_density.length) {
+				lane_coordinates = Arrays.copyOf(lane_coordinates, 4 * number_of_lanes * 2);
+				lane_density = Arrays.copyOf(lane_density, number_of_lanes * 2);
+			}
+			lane_coordinates[4 * number_of_lanes] = x1;
+			lane_coordinates[4 * number_of_lanes + 1] = y1;
+			lane_coordinates[4 * number_of_lanes + 2] = x2;
+			lane_coordinates[4 * number_of_lanes + 3] = y2;
+			lane_density[number_of_lanes] = density;
+			number_of_lanes++;
+		}
+
+		public SceneSnapshot build(double time) {
+			SceneSnapshot snapshot = new SceneSnapshot(time, this);
+			number_of_vehicles = 0;
+			number_of_lights = 0;
+			number_of_lanes = 0;
+			return snapshot;
+		}
+	}
+}
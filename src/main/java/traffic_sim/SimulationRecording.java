@@ -0,0 +1,197 @@
+package traffic_sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * SimulationRecording
+ *
+ * The random decisions of a simulation run: the times at which cars appeared at the
+ * producers and the lanes chosen by the vehicles, together with the seed of the world.
+ *
+ * A world either records into the recording (SimulationWorld.startRecording()) or replays
+ * it (SimulationWorld.replay()): the recorded arrivals and lane choices are fed into the
+ * simulation again instead of drawing them, so a run can be reproduced exactly - even when
+ * the random sources are used differently in between.
+ *
+ * Producers are identified by the order of their construction and lanes by their id,
+ * so the scene has to be constructed in the same way when replaying.
+ */
+public class SimulationRecording {
+
+	public enum Mode {
+		RECORD, REPLAY
+	}
+
+	private static final int MAGIC = 0x53494D52; // "SIMR"
+
+	/**
+	 * Recorded values of one producer or lane - read in order when replaying.
+	 */
+	private static class Channel {
+		private double[] values = new double[16];
+		private int size = 0;
+		private int next = 0;
+
+		void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		boolean hasNext() {
+			return next < size;
+		}
+
+		double next() {
+			return values[next++];
+		}
+	}
+
+	private Mode mode = Mode.RECORD;
+	private final long seed;
+	// Arrival times by producer and chosen lanes by lane id.
+	private final Map<Integer, Channel> arrivals = new TreeMap<>();
+	private final Map<Integer, Channel> laneChoices = new TreeMap<>();
+
+	public SimulationRecording(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Start replaying from the beginning.
+	 */
+	void startReplay() {
+		mode = Mode.REPLAY;
+		for (Channel channel : arrivals.values()) {
+			channel.next = 0;
+		}
+		for (Channel channel : laneChoices.values()) {
+			channel.next = 0;
+		}
+	}
+
+	private static Channel channel(Map<Integer, Channel> channels, int id) {
+		Channel channel = channels.get(id);
+		if (channel == null) {
+			channel = new Channel();
+			channels.put(id, channel);
+		}
+		return channel;
+	}
+
+	/*
+	 * A car appeared at the producer.
+	 */
+	synchronized void recordArrival(int producer, double time) {
+		channel(arrivals, producer).add(time);
+	}
+
+	/*
+	 * Time of the next recorded arrival at the producer
+	 * (Double.POSITIVE_INFINITY when there is none left).
+	 */
+	synchronized double nextArrival(int producer) {
+		Channel channel = arrivals.get(producer);
+		return (channel != null && channel.hasNext()) ? channel.next() : Double.POSITIVE_INFINITY;
+	}
+
+	/*
+	 * Choose one of the given number of lanes for a vehicle leaving the lane:
+	 * drawn from the random source (and recorded) or replayed.
+	 * When there are no recorded choices left the choice is drawn again.
+	 */
+	synchronized int chooseLane(int lane, int numberOfLanes, Random random) {
+		if (mode == Mode.REPLAY) {
+			Channel channel = laneChoices.get(lane);
+			if (channel != null && channel.hasNext()) {
+				int choice = (int) channel.next();
+				if (choice < numberOfLanes) {
+					return choice;
+				}
+			}
+			return random.nextInt(numberOfLanes);
+		}
+		int choice = random.nextInt(numberOfLanes);
+		channel(laneChoices, lane).add(choice);
+		return choice;
+	}
+
+	public synchronized int getNumberOfArrivals() {
+		int count = 0;
+		for (Channel channel : arrivals.values()) {
+			count += channel.size;
+		}
+		return count;
+	}
+
+	public synchronized int getNumberOfLaneChoices() {
+		int count = 0;
+		for (Channel channel : laneChoices.values()) {
+			count += channel.size;
+		}
+		return count;
+	}
+
+	public synchronized void save(String file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(seed);
+			writeChannels(out, arrivals);
+			writeChannels(out, laneChoices);
+		}
+	}
+
+	private static void writeChannels(DataOutputStream out, Map<Integer, Channel> channels) throws IOException {
+		out.writeInt(channels.size());
+		for (Map.Entry<Integer, Channel> entry : channels.entrySet()) {
+			Channel channel = entry.getValue();
+			out.writeInt(entry.getKey());
+			out.writeInt(channel.size);
+			for (int i = 0; i < channel.size; i++) {
+				out.writeDouble(channel.values[i]);
+			}
+		}
+	}
+
+	public static SimulationRecording load(String file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a simulation recording");
+			}
+			SimulationRecording recording = new SimulationRecording(in.readLong());
+			readChannels(in, recording.arrivals);
+			readChannels(in, recording.laneChoices);
+			return recording;
+		}
+	}
+
+	private static void readChannels(DataInputStream in, Map<Integer, Channel> channels) throws IOException {
+		int numberOfChannels = in.readInt();
+		for (int c = 0; c < numberOfChannels; c++) {
+			Channel channel = channel(channels, in.readInt());
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				channel.add(in.readDouble());
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package traffic_sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SimulationResult
+ *
+ * Summary of a (headless) simulation run: how far the simulation was advanced,
+ * how long that took and what was measured at the evaluated consumers.
+ */
+public class SimulationResult {
+
+	private final double simulated_time;
+	private final long number_of_steps;
+	private final long wall_clock_millis;
+	private final List<ConsumerStatistics> consumers = new ArrayList<>();
+
+	/**
+	 * Measurements of a single VehicleConsumerEvaluation at the end of a run.
+	 */
+	public static class ConsumerStatistics {
+		private final String name;
+		private final int number_of_vehicles;
+		private final double average_time;
+		// Percentiles of the travel time (NaN if not known).
+		private final double p50, p95, p99;
+		private final TravelTimeStatistics statistics;
+
+		public ConsumerStatistics(String name, int numberOfVehicles, double averageTime) {
+			this(name, numberOfVehicles, averageTime, null);
+		}
+
+		public ConsumerStatistics(String name, int numberOfVehicles, double averageTime,
+				TravelTimeStatistics statistics) {
+			this.name = name;
+			this.number_of_vehicles = numberOfVehicles;
+			this.average_time = averageTime;
+			this.statistics = statistics;
+			this.p50 = (statistics == null) ? Double.NaN : statistics.getPercentile(50);
+			this.p95 = (statistics == null) ? Double.NaN : statistics.getPercentile(95);
+			this.p99 = (statistics == null) ? Double.NaN : statistics.getPercentile(99);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getNumberOfVehicles() {
+			return number_of_vehicles;
+		}
+
+		public double getAverageTimeOfVehicles() {
+			return average_time;
+		}
+
+		public double getMedianTime() {
+			return p50;
+		}
+
+		public double getPercentile95Time() {
+			return p95;
+		}
+
+		public double getPercentile99Time() {
+			return p99;
+		}
+
+		/*
+		 * The complete statistics of the consumer (null if not known).
+		 */
+		public TravelTimeStatistics getStatistics() {
+			return statistics;
+		}
+	}
+
+	public SimulationResult(double simulatedTime, long numberOfSteps, long wallClockMillis) {
+		this.simulated_time = simulatedTime;
+		this.number_of_steps = numberOfSteps;
+		this.wall_clock_millis = wallClockMillis;
+	}
+
+	public void addConsumerStatistics(VehicleConsumerEvaluation evaluation) {
+		consumers.add(new ConsumerStatistics(evaluation.getName(),
+				evaluation.getNumberOfVehicles(), evaluation.getAverageTimeOfVehicles(),
+				evaluation.getStatistics()));
+	}
+
+	/*
+	 * Simulated time in seconds covered by the run.
+	 */
+	public double getSimulatedTime() {
+		return simulated_time;
+	}
+
+	public long getNumberOfSteps() {
+		return number_of_steps;
+	}
+
+	/*
+	 * Real time in milliseconds the run took.
+	 */
+	public long getWallClockMillis() {
+		return wall_clock_millis;
+	}
+
+	public List<ConsumerStatistics> getConsumerStatistics() {
+		return Collections.unmodifiableList(consumers);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Simulated ").append(simulated_time).append(" s in ")
+			.append(number_of_steps).append(" steps (").append(wall_clock_millis).append(" ms)");
+		for (ConsumerStatistics stats : consumers) {
+			sb.append("\n  ").append(stats.getName())
+				.append(" - Cars: ").append(stats.getNumberOfVehicles())
+				.append(" ; AverageTime: ").append(stats.getAverageTimeOfVehicles());
+			if (!Double.isNaN(stats.getMedianTime())) {
+				sb.append(String.format(Locale.ROOT, " ; p50/p95/p99: %.2f / %.2f / %.2f",
+						stats.getMedianTime(), stats.getPercentile95Time(), stats.getPercentile99Time()));
+			}
+		}
+		return sb.toString();
+	}
+}
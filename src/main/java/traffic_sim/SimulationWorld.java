@@ -0,0 +1,356 @@
+package traffic_sim;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import pipe_project.PetriNetStepper;
+
+/**
+ * SimulationWorld
+ *
+ * Owns everything belonging to one simulation: the simulation objects which require
+ * updates, the simulation clock, the traffic lights, the vehicle state and the
+ * Petri net runner controlling the scene.
+ *
+ * Simulation objects belong to the current world of the thread constructing them.
+ * Each thread starts with a shared default world, so a single simulation does not
+ * have to care about worlds at all. To run independent scenarios concurrently
+ * (e.g. in a thread pool) each scenario creates its own world, makes it current while
+ * building the scene and resets the current world afterwards - a finished world is
+ * then garbage collected with all its objects.
+ *
+ * All randomness of the simulation comes from the seed of the world: each simulation
+ * object gets its own random source split off the seed when it is constructed, so a
+ * scene constructed in the same order with the same seed behaves exactly the same.
+ * The random decisions can be recorded and replayed as well (SimulationRecording).
+ */
+public class SimulationWorld {
+
+	private static final SimulationWorld defaultWorld = new SimulationWorld();
+	private static final ThreadLocal<SimulationWorld> currentWorld = new ThreadLocal<>();
+
+	// Collection of all simulation objects that require updates.
+	private final ArrayList<TemporalTrafficObject> updateList = new ArrayList<>();
+	private double current_time = 0.;
+	// All traffic lights - used for visualization.
+	private final ArrayList<TrafficLight> trafficLights = new ArrayList<>();
+	// All evaluations - used for collecting results of a run.
+	private final ArrayList<VehicleConsumerEvaluation> evaluations = new ArrayList<>();
+	private final VehicleStateStore vehicleStates = new VehicleStateStore();
+	// Vehicles which left the simulation - reused by the producers.
+	private final VehiclePool vehiclePool = new VehiclePool();
+	// Next hops of the vehicles with a destination.
+	private final RoutingTable routingTable = new RoutingTable(vehicleStates);
+	// The runner of the Petri net controlling the scene (can be null).
+	private PetriNetStepper runner;
+
+	// Seed of the world and the source of seeds for the random sources of the objects.
+	private long seed;
+	private SplittableRandom seeds;
+	// Recording or replaying the random decisions (can be null).
+	private SimulationRecording recording;
+	private int numberOfProducers = 0;
+	// Demand of all producers without a profile of their own (can be null).
+	private ArrivalProfile arrivalProfile;
+
+	// Event driven mode: objects requiring an update in the next step (by their index
+	// in the updateList, so they are updated in the same order as in updateAll)
+	// and the objects which are sleeping until a given time.
+	private final BitSet activeObjects = new BitSet();
+	private final PriorityQueue<ScheduledUpdate> scheduledUpdates = new PriorityQueue<>();
+
+	/**
+	 * A sleeping object which has to be woken up at the given time.
+	 */
+	private static class ScheduledUpdate implements Comparable<ScheduledUpdate> {
+		private final double time;
+		private final int index;
+
+		ScheduledUpdate(double time, int index) {
+			this.time = time;
+			this.index = index;
+		}
+
+		@Override
+		public int compareTo(ScheduledUpdate other) {
+			int cmp = Double.compare(time, other.time);
+			return (cmp != 0) ? cmp : Integer.compare(index, other.index);
+		}
+	}
+
+	/**
+	 * World with a random seed.
+	 */
+	public SimulationWorld() {
+		this(new SplittableRandom().nextLong());
+	}
+
+	public SimulationWorld(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * The world simulation objects constructed by the calling thread belong to.
+	 */
+	public static SimulationWorld current() {
+		SimulationWorld world = currentWorld.get();
+		return (world != null) ? world : defaultWorld;
+	}
+
+	/**
+	 * Make this world the current world of the calling thread.
+	 */
+	public void makeCurrent() {
+		currentWorld.set(this);
+	}
+
+	/**
+	 * Switch the calling thread back to the default world.
+	 */
+	public static void resetCurrent() {
+		currentWorld.remove();
+	}
+
+	void addObject(TemporalTrafficObject updObj) {
+		updObj.update_index = updateList.size();
+		updateList.add(updObj);
+		activeObjects.set(updObj.update_index);
+	}
+
+	/**
+	 * Remove a simulation object - it is not updated anymore.
+	 */
+	public void removeObject(TemporalTrafficObject updObj) {
+		if (updateList.remove(updObj)) {
+			// The indices changed: all objects are woken up again.
+			scheduledUpdates.clear();
+			activeObjects.clear();
+			for (int i = 0; i < updateList.size(); i++) {
+				updateList.get(i).update_index = i;
+			}
+			activeObjects.set(0, updateList.size());
+		}
+	}
+
+	/**
+	 * Wake up an object in the event driven mode: it is updated in the current
+	 * step (if it comes later in the updateList) or in the next step.
+	 */
+	void wakeUp(TemporalTrafficObject updObj) {
+		activeObjects.set(updObj.update_index);
+	}
+
+	/**
+	 * Reset the seed - only objects constructed afterwards are affected.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.seeds = new SplittableRandom(seed);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * A new random source for a simulation object, split off the seed of the world.
+	 * Has to be called while constructing the scene (from the constructing thread).
+	 */
+	public Random newRandom() {
+		return new Random(seeds.nextLong());
+	}
+
+	/**
+	 * Record the arrivals and lane choices of this world - has to be called
+	 * before the scene is constructed.
+	 */
+	public SimulationRecording startRecording() {
+		recording = new SimulationRecording(seed);
+		return recording;
+	}
+
+	/**
+	 * Replay a recording: the world gets the seed of the recording and the recorded
+	 * arrivals and lane choices are used instead of drawing them.
+	 * Has to be called before the scene is constructed (in the same way as when recording).
+	 */
+	public void replay(SimulationRecording recording) {
+		setSeed(recording.getSeed());
+		recording.startReplay();
+		this.recording = recording;
+	}
+
+	public SimulationRecording getRecording() {
+		return recording;
+	}
+
+	public ArrivalProfile getArrivalProfile() {
+		return arrivalProfile;
+	}
+
+	/**
+	 * Demand of all producers which do not have a profile of their own -
+	 * null to let them follow their random traffic situations.
+	 */
+	public void setArrivalProfile(ArrivalProfile profile) {
+		this.arrivalProfile = profile;
+		for (TemporalTrafficObject updObj : updateList) {
+			if (updObj instanceof VehicleProducer) {
+				VehicleProducer producer = (VehicleProducer) updObj;
+				if (producer.getOwnArrivalProfile() == null) {
+					producer.demandChanged();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Number of a new producer in the recording.
+	 */
+	int registerProducer() {
+		return numberOfProducers++;
+	}
+
+	void addTrafficLight(TrafficLight light) {
+		trafficLights.add(light);
+	}
+
+	void addEvaluation(VehicleConsumerEvaluation evaluation) {
+		evaluations.add(evaluation);
+	}
+
+	/**
+	 * Main simulation step.
+	 *
+	 * The step is done in two phases on the calling thread (see updateAllTwoPhase) -
+	 * a simulation step has only one order of changes, so the serial, parallel and
+	 * event driven steps give the same results.
+	 */
+	public void updateAll(double duration) {
+		updateAllTwoPhase(duration, false);
+	}
+
+	/**
+	 * Main simulation step split into two phases.
+	 *
+	 * In the first phase computeStep() is called on all simulation objects, in parallel
+	 * if requested (using the common fork join pool). In the second phase commitStep()
+	 * is called on all objects in order. The result does not depend on the parallel flag:
+	 * vehicles handed over to another lane in the second phase are moved by that lane
+	 * in the next step only, whatever the order of the lanes.
+	 */
+	public void updateAllTwoPhase(double duration, boolean parallel) {
+		if (parallel) {
+			updateList.parallelStream().forEach(updObj -> updObj.computeStep(duration));
+		} else {
+			for (TemporalTrafficObject updObj : updateList) {
+				updObj.computeStep(duration);
+			}
+		}
+		for (TemporalTrafficObject updObj : updateList) {
+			updObj.commitStep(duration);
+		}
+		current_time = current_time + duration;
+	}
+
+	/**
+	 * Simulation step in the event driven mode.
+	 *
+	 * Like updateAll, but only objects which are active are updated (both phases).
+	 * After its commitStep, an object is put to sleep when it does not require an update
+	 * in the next step (see TemporalTrafficObject.getNextEventTime()). Sleeping objects
+	 * are woken up at their next event time - or earlier by wakeUp(). Objects woken up
+	 * in the second phase get their commitStep in the same step if they come later in
+	 * the updateList, like in updateAll (a sleeping object has nothing to compute).
+	 */
+	public void updateEventDriven(double duration) {
+		double stepEnd = current_time + duration / 2;
+		while (!scheduledUpdates.isEmpty() && (scheduledUpdates.peek().time <= stepEnd)) {
+			activeObjects.set(scheduledUpdates.poll().index);
+		}
+		for (int i = activeObjects.nextSetBit(0); i >= 0; i = activeObjects.nextSetBit(i + 1)) {
+			updateList.get(i).computeStep(duration);
+		}
+		for (int i = activeObjects.nextSetBit(0); i >= 0; i = activeObjects.nextSetBit(i + 1)) {
+			TemporalTrafficObject updObj = updateList.get(i);
+			updObj.commitStep(duration);
+			double next = updObj.getNextEventTime();
+			if (next > current_time + duration + duration / 2) {
+				activeObjects.clear(i);
+				if (next < Double.POSITIVE_INFINITY) {
+					scheduledUpdates.add(new ScheduledUpdate(next, i));
+				}
+			}
+		}
+		current_time = current_time + duration;
+	}
+
+	/**
+	 * True if no object requires an update in the next step (event driven mode).
+	 */
+	public boolean isIdle() {
+		return activeObjects.isEmpty();
+	}
+
+	/**
+	 * Number of steps until the next sleeping object has to be woken up
+	 * (Long.MAX_VALUE if no object is waiting for a given time).
+	 */
+	public long getStepsUntilNextEvent(double duration) {
+		if (scheduledUpdates.isEmpty()) {
+			return Long.MAX_VALUE;
+		}
+		double steps = Math.ceil((scheduledUpdates.peek().time - current_time) / duration - 0.5);
+		return (steps > 0) ? (long) steps : 0;
+	}
+
+	/**
+	 * Advance the clock over steps in which no object requires an update.
+	 * The time is advanced step by step to get exactly the same clock as with updateAll.
+	 */
+	public void skipIdleSteps(long steps, double duration) {
+		for (long step = 0; step < steps; step++) {
+			current_time = current_time + duration;
+		}
+	}
+
+	/*
+	 * Get the current time of the traffic simulation.
+	 */
+	public double getCurrentTime() {
+		return current_time;
+	}
+
+	public List<TrafficLight> getTrafficLights() {
+		return Collections.unmodifiableList(trafficLights);
+	}
+
+	public List<VehicleConsumerEvaluation> getEvaluations() {
+		return Collections.unmodifiableList(evaluations);
+	}
+
+	public VehicleStateStore getVehicleStateStore() {
+		return vehicleStates;
+	}
+
+	public RoutingTable getRoutingTable() {
+		return routingTable;
+	}
+
+	public VehiclePool getVehiclePool() {
+		return vehiclePool;
+	}
+
+	public PetriNetStepper getPetriNetRunner() {
+		return runner;
+	}
+
+	public void setPetriNetRunner(PetriNetStepper runner) {
+		this.runner = runner;
+	}
+}
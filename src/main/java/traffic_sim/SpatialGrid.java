@@ -0,0 +1,102 @@
+package traffic_sim;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SpatialGrid
+ *
+ * Spatial index of drawables: the plane is divided into square cells and each drawable
+ * is registered in all cells its bounds (Drawable.getBounds()) overlap.
+ * A query returns the drawables intersecting an area by their position in the drawing
+ * order, so iterating over the result draws them in order of their priority.
+ * Drawables without bounds are always part of the result.
+ *
+ * The grid is immutable - it is built again when drawables are added.
+ */
+final class SpatialGrid {
+
+	private static final int CELL_SIZE = 100;
+
+	private final List<Drawable> drawables;
+	private final Rectangle[] bounds;
+	private final Map<Long, int[]> cells = new HashMap<>();
+	private final BitSet unbounded = new BitSet();
+
+	/**
+	 * @param drawables The drawables in drawing order
+	 */
+	SpatialGrid(List<Drawable> drawables) {
+		this.drawables = new ArrayList<>(drawables);
+		this.bounds = new Rectangle[drawables.size()];
+		Map<Long, List<Integer>> cellLists = new HashMap<>();
+		for (int i = 0; i < bounds.length; i++) {
+			Rectangle b = drawables.get(i).getBounds();
+			bounds[i] = b;
+			if (b == null) {
+				unbounded.set(i);
+				continue;
+			}
+			for (int cx = cell(b.x); cx <= cell(b.x + b.width); cx++) {
+				for (int cy = cell(b.y); cy <= cell(b.y + b.height); cy++) {
+					cellLists.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(i);
+				}
+			}
+		}
+		for (Map.Entry<Long, List<Integer>> entry : cellLists.entrySet()) {
+			cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		}
+	}
+
+	private static int cell(int coordinate) {
+		return Math.floorDiv(coordinate, CELL_SIZE);
+	}
+
+	private static long key(int cx, int cy) {
+		return (((long) cx) << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Mark the drawables intersecting the area in the result (by their index).
+	 */
+	void query(Rectangle area, BitSet result) {
+		result.or(unbounded);
+		int minX = cell(area.x), maxX = cell(area.x + area.width);
+		int minY = cell(area.y), maxY = cell(area.y + area.height);
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+			// Large area (zoomed out): cheaper to go through all occupied cells.
+			for (int[] cell : cells.values()) {
+				addIntersecting(cell, area, result);
+			}
+			return;
+		}
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cy = minY; cy <= maxY; cy++) {
+				int[] cell = cells.get(key(cx, cy));
+				if (cell != null) {
+					addIntersecting(cell, area, result);
+				}
+			}
+		}
+	}
+
+	private void addIntersecting(int[] cell, Rectangle area, BitSet result) {
+		for (int i : cell) {
+			if (!result.get(i) && bounds[i].intersects(area)) {
+				result.set(i);
+			}
+		}
+	}
+
+	Drawable get(int index) {
+		return drawables.get(index);
+	}
+
+	int size() {
+		return drawables.size();
+	}
+}
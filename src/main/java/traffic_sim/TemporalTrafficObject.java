@@ -1,22 +1,29 @@
 package traffic_sim;
 
-import java.awt.*;
-import java.util.ArrayList;
-
 /**
  * AbstractClass for all simulation objects that require updates.
  *
  * updateStep has to be implemented and is called on all those objects for
- * every basic call to updateAll().
+ * every basic call to updateAll() of the SimulationWorld the object belongs to.
+ *
+ * Alternatively, updateAllTwoPhase() splits a simulation step into two phases:
+ * first computeStep() is called on all objects (possibly in parallel), afterwards
+ * commitStep() is called on all objects in the order of the updateList.
+ *
+ * In the event driven mode (updateEventDriven()) only objects which require an update
+ * are called: an object tells through getNextEventTime() when it needs its next update
+ * and it is woken up earlier when something happens that concerns it (wakeUp()).
  */
 public abstract class TemporalTrafficObject {
     
-    // Collection of all simulation objects that require updates.
-    protected static ArrayList<TemporalTrafficObject> updateList = new ArrayList<>();
-    private static double current_time = 0.;
+    // The world the object belongs to (and is updated in).
+    protected final SimulationWorld world;
+    // Position in the update list of the world.
+    int update_index;
     
     public TemporalTrafficObject() {
-        updateList.add(this);
+        world = SimulationWorld.current();
+        world.addObject(this);
     }
 
 	/**
@@ -25,24 +32,77 @@ public abstract class TemporalTrafficObject {
 	 * Has to be implemented by derived classes.
 	 */
 	public abstract void updateStep(double duration);
+
+	/**
+	 * First phase of a two phase update step.
+	 *
+	 * Objects can compute their next state here - but only using state which is owned by
+	 * the object itself, as computeStep is called for all objects in parallel.
+	 * Does nothing by default.
+	 */
+	public void computeStep(double duration) {
+	}
+
+	/**
+	 * Second phase of a two phase update step.
+	 *
+	 * Called for all objects in the order of the updateList, after computeStep
+	 * has finished for all objects. Changes affecting other objects (like handing
+	 * over vehicles) are done here. By default the complete updateStep is done here.
+	 */
+	public void commitStep(double duration) {
+		updateStep(duration);
+	}
+
+	/**
+	 * Simulation time at which the object requires its next update in the
+	 * event driven mode (asked after each update of the object).
+	 *
+	 * By default objects require an update in every step and the current time is returned.
+	 * Objects returning a later time (or Double.POSITIVE_INFINITY when they are idle)
+	 * are not updated until then - the update steps in between must not change anything.
+	 */
+	public double getNextEventTime() {
+		return world.getCurrentTime();
+	}
+
+	/**
+	 * Request updates again in the event driven mode, e.g. when a vehicle arrives.
+	 */
+	public void wakeUp() {
+		world.wakeUp(this);
+	}
 	
 	/**
-	 * Main simulation step.
+	 * Main simulation step of the current world of the calling thread.
 	 *
-	 * Calls all updateStep() for all simulation objects and forces a repaint.
+	 * @see SimulationWorld#updateAll(double)
 	 */
 	public static void updateAll(double duration) {
-		for (TemporalTrafficObject updObj : updateList) {
-			updObj.updateStep(duration);
-		}
-		current_time = current_time + duration;
+		SimulationWorld.current().updateAll(duration);
 	}
-	
+
+	/**
+	 * Two phase simulation step of the current world of the calling thread.
+	 *
+	 * @see SimulationWorld#updateAllTwoPhase(double, boolean)
+	 */
+	public static void updateAllTwoPhase(double duration, boolean parallel) {
+		SimulationWorld.current().updateAllTwoPhase(duration, parallel);
+	}
+
 	/*
-	 * Get the current time of the traffic simulation.
+	 * Get the current time of the current world of the calling thread.
 	 */
 	public static double getCurrentTime() {
-		return current_time;
+		return SimulationWorld.current().getCurrentTime();
+	}
+
+	/*
+	 * Get the world this object belongs to.
+	 */
+	public SimulationWorld getWorld() {
+		return world;
 	}
     
-}
\ No newline at end of file
+}
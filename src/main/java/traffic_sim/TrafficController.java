@@ -5,9 +5,10 @@ package traffic_sim;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
-import pipe_project.FFWTimePetriNetRunner;
+import pipe_project.PetriNetStepper;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * Simple GUI Controller.
@@ -18,13 +19,26 @@ public class TrafficController {
 
     private View view;
     private ActionListener actionListener;
+    // The world which is simulated (the current world when the controller was constructed).
+    private final SimulationWorld world;
     
     private static final double UPDATE_STEP = 0.1;
     // The simulation can be run in realtime - or just in evaluation mode
 	// = there will be no sleep cycles in between (and no view updates).
     private static boolean REALTIME_CONTROL = true;
+    // Snapshots are published to the view at most with this frame rate (per second of
+    // real time) - independent of how fast the simulation is running.
+    private static final double DEFAULT_FRAME_RATE = 30.;
+    private volatile double frame_rate = DEFAULT_FRAME_RATE;
+    // In the "view off" mode no snapshots are published at all.
+    private volatile boolean view_enabled = true;
+    // The view was switched off by a frame rate of 0 (a frame rate above 0 switches it on again).
+    private volatile boolean stopped_by_frame_rate = false;
+    // Earliest time (System.nanoTime()) for publishing the next snapshot.
+    private long next_frame_time;
 
     public TrafficController(){
+        this.world = SimulationWorld.current();
         this.view = new View();
         actionListener = new ActionListener() {
             public void actionPerformed(ActionEvent actionEvent) {
@@ -32,9 +46,12 @@ public class TrafficController {
             }
         };
         view.getButton().addActionListener(actionListener);
+        view.getViewToggle().addActionListener(actionEvent ->
+        	setViewEnabled(view.getViewToggle().isSelected()));
+        next_frame_time = System.nanoTime();
     }
 
-    public void control(FFWTimePetriNetRunner runner){
+    public void control(PetriNetStepper runner){
         while (true) {
             // Stepping the Petri Net every second (this should be tuned to a lower value
             // when your system is running).
@@ -45,10 +62,66 @@ public class TrafficController {
 	        	runner.stepFastForwardPetriNet( (int) (UPDATE_STEP*1000) );
 	        }
             // And calling an update on the traffic simulation.
-            TemporalTrafficObject.updateAll( UPDATE_STEP );
-            view.getTrafficView().repaint();
+            world.updateAll( UPDATE_STEP );
+            publishFrame();
         }
     }
+
+    /*
+     * Publish a snapshot to the view when the next frame is due
+     * (the view draws the snapshot on its own thread).
+     */
+    private void publishFrame() {
+    	if (!view_enabled) {
+    		return;
+    	}
+    	long now = System.nanoTime();
+    	if (now - next_frame_time < 0) {
+    		return;
+    	}
+    	// Frames are not caught up when the simulation step took longer than a frame:
+    	// the next frame is due one period after this one then.
+    	long period = (long) (1e9 / frame_rate);
+    	next_frame_time += period;
+    	if (next_frame_time - now <= 0) {
+    		next_frame_time = now + period;
+    	}
+    	view.getTrafficView().publishSnapshot(world.getCurrentTime());
+    }
+
+    public double getFrameRate() {
+    	return frame_rate;
+    }
+
+    /**
+     * Set the maximal number of frames per second shown by the view -
+     * a frame rate of 0 switches the view off (until a frame rate above 0 is set).
+     */
+    public void setFrameRate(double frameRate) {
+    	if (frameRate <= 0) {
+    		setViewEnabled(false);
+    		stopped_by_frame_rate = true;
+    	} else {
+    		frame_rate = frameRate;
+    		if (stopped_by_frame_rate) {
+    			setViewEnabled(true);
+    		}
+    	}
+    }
+
+    public boolean isViewEnabled() {
+    	return view_enabled;
+    }
+
+    /**
+     * Switch the view on or off - the simulation keeps on running.
+     * Can be called from any thread (the toggle of the view is updated on the EDT).
+     */
+    public void setViewEnabled(boolean enabled) {
+    	view_enabled = enabled;
+    	stopped_by_frame_rate = false;
+    	SwingUtilities.invokeLater(() -> view.getViewToggle().setSelected(view_enabled));
+    }
     
     public boolean getRealTimeControlFlag() {
     	return REALTIME_CONTROL;
@@ -62,4 +135,8 @@ public class TrafficController {
         return view;
     }
 
+    public SimulationWorld getWorld() {
+        return world;
+    }
+
 }
\ No newline at end of file
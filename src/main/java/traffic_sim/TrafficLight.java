@@ -1,7 +1,6 @@
 package traffic_sim;
 
 import java.awt.*;
-import java.util.ArrayList;
 
 /**
  * A TrafficLight.
@@ -14,15 +13,13 @@ public class TrafficLight implements VehicleProducerInterface, VehicleConsumerIn
 
     protected Lane lane_ends, lane_starts;
 
-    // A list of all traffic lights - used for visualization.
-    protected static ArrayList<TrafficLight> trafficLights = new ArrayList<>();
-
 	// Visualization points.
 	private Point start_point, end_point, graphic_pos;
 	private Color color;
 
 	public TrafficLight() {
-    	trafficLights.add(this);
+    	// All traffic lights are registered in their world - used for visualization.
+    	SimulationWorld.current().addTrafficLight(this);
 		color=Color.RED;
     }
 
@@ -127,6 +124,23 @@ public class TrafficLight implements VehicleProducerInterface, VehicleConsumerIn
 		g2d.fillOval( tl_pos.x, tl_pos.y, 15, 15);
 	}
 
+	/**
+	 * The traffic light changes its color - it is only drawn from snapshots.
+	 */
+	@Override
+	public void redrawStatic(Graphics2D g2d) {
+	}
+
+	@Override
+	public void snapshot(SceneSnapshot.Builder snapshot) {
+		snapshot.addTrafficLight(graphic_pos.x, graphic_pos.y, color);
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		return (graphic_pos == null) ? null : new Rectangle(graphic_pos.x, graphic_pos.y, 15, 15);
+	}
+
 	@Override
 	public Integer priority() {
 		return 2;
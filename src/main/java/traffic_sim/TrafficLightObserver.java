@@ -1,8 +1,6 @@
 package traffic_sim;
 
-import pipe_project.MainPN;
-
-import java.awt.*;
+import pipe_project.PetriNetStepper;
 
 /**
  * Observes the simulation and marks a connected Place in the PetriNet.
@@ -15,6 +13,8 @@ public class TrafficLightObserver extends TemporalTrafficObject {
 	protected String target_place = "none";
 	// The observed traffic light.
 	private TrafficLight traffic_light;
+	// Registered at the observed lane (which might not exist on construction).
+	private boolean registered = false;
 	
 	public TrafficLightObserver(TrafficLight tl) {
 		this.traffic_light = tl;
@@ -25,19 +25,37 @@ public class TrafficLightObserver extends TemporalTrafficObject {
 	}
 
     public void updateStep(double duration) {
-		if (!(target_place.equals("none"))) {
+		if (!registered && (traffic_light.getLaneEnding() != null)) {
+			traffic_light.getLaneEnding().addDependent(this);
+			registered = true;
+		}
+		PetriNetStepper runner = world.getPetriNetRunner();
+		if (!(target_place.equals("none")) && (runner != null)) {
     		try {
     			// Marking of Places in PIPE is done locally
     			// = for a specific PetriNetRunner (in practice each runner
     			// has its own copy of a petri net). As we are only interested in
     			// advancing nets right now (and not in deriving all possible successor 
-    			// states), there can simple be one main petri net runner.
+    			// states), there can simple be one main petri net runner per world.
+    			// The marking is applied by the runner before its next step
+    			// (together with the markings of all other observers).
     			if (traffic_light.getNumberOfWaitingCars() > 2) {
-	    			MainPN.runner.markPlace( target_place, "Default", 1 );
+	    			runner.markPlaceBatched( target_place, "Default", 1 );
     			}
     		} catch (Exception e) {
 				e.printStackTrace();
 	        }
     	}	
 	}
+
+	/*
+	 * Without cars waiting in front of the traffic light there is nothing to mark.
+	 */
+	@Override
+	public double getNextEventTime() {
+		if (registered && traffic_light.getLaneEnding().getVehiclesOnLane().isEmpty()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return super.getNextEventTime();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package traffic_sim;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TravelTimeStatistics
+ *
+ * Streaming statistics of the vehicles arriving at a consumer: a histogram of the
+ * travel times and the number of arrivals in windows of simulation time (throughput).
+ *
+ * The histogram has logarithmic buckets (as a HDR histogram): up to 128 ms each
+ * millisecond has its own bucket, above that each power of two is divided into 64
+ * buckets - the relative error of a percentile is therefore below 1.6 %.
+ * Travel times up to 2^40 ms are recorded (longer ones end in the last bucket).
+ *
+ * Arrivals are recorded by the simulation thread. All counters are atomic, so the
+ * statistics can be queried from other threads at any time without locking
+ * (the result is not necessarily a consistent snapshot of a single point in time).
+ */
+public class TravelTimeStatistics {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	private static final int MAX_MAGNITUDE = 40;
+	private static final int NUMBER_OF_BUCKETS =
+			HALF_SUB_BUCKETS * (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2);
+
+	// Throughput windows: the last NUMBER_OF_WINDOWS windows of WINDOW_LENGTH seconds.
+	private static final double DEFAULT_WINDOW_LENGTH = 60.;
+	private static final int NUMBER_OF_WINDOWS = 60;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total_millis = new AtomicLong();
+	private final AtomicLong max_millis = new AtomicLong();
+
+	private final double window_length;
+	// Number of the window (time / window_length) each slot currently counts for.
+	private final AtomicLongArray window_numbers = new AtomicLongArray(NUMBER_OF_WINDOWS);
+	private final AtomicLongArray window_counts = new AtomicLongArray(NUMBER_OF_WINDOWS);
+
+	public TravelTimeStatistics() {
+		this(DEFAULT_WINDOW_LENGTH);
+	}
+
+	/**
+	 * @param windowLength Length of a throughput window in seconds of simulation time
+	 */
+	public TravelTimeStatistics(double windowLength) {
+		this.window_length = windowLength;
+		for (int i = 0; i < NUMBER_OF_WINDOWS; i++) {
+			window_numbers.set(i, -1);
+		}
+	}
+
+	/**
+	 * Record a vehicle arriving at the given simulation time after the given travel time.
+	 */
+	public void record(double time, double travelTime) {
+		long millis = Math.max(0, Math.round(travelTime * 1000.));
+		buckets.incrementAndGet(bucketIndex(millis));
+		total_millis.addAndGet(millis);
+		if (millis > max_millis.get()) {
+			max_millis.set(millis);
+		}
+		count.incrementAndGet();
+
+		long window = (long) Math.floor(time / window_length);
+		int slot = (int) Math.floorMod(window, (long) NUMBER_OF_WINDOWS);
+		if (window_numbers.get(slot) != window) {
+			window_counts.set(slot, 0);
+			window_numbers.set(slot, window);
+		}
+		window_counts.incrementAndGet(slot);
+	}
+
+	static int bucketIndex(long millis) {
+		if (millis < SUB_BUCKETS) {
+			return (int) millis;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(millis) - (SUB_BUCKET_BITS - 1);
+		if (magnitude > MAX_MAGNITUDE - SUB_BUCKET_BITS) {
+			return NUMBER_OF_BUCKETS - 1;
+		}
+		return HALF_SUB_BUCKETS * magnitude + (int) (millis >>> magnitude);
+	}
+
+	/*
+	 * Smallest travel time (in ms) counted in the bucket.
+	 */
+	static long bucketStart(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = index / HALF_SUB_BUCKETS - 1;
+		return ((long) (index - HALF_SUB_BUCKETS * magnitude)) << magnitude;
+	}
+
+	static long bucketWidth(int index) {
+		return (index < SUB_BUCKETS) ? 1 : 1L << (index / HALF_SUB_BUCKETS - 1);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/*
+	 * Mean travel time in seconds (NaN if there were no vehicles).
+	 */
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? Double.NaN : total_millis.get() / 1000. / n;
+	}
+
+	public double getMax() {
+		return max_millis.get() / 1000.;
+	}
+
+	/**
+	 * Travel time in seconds below which the given percentage of the vehicles arrived
+	 * (the middle of the histogram bucket) - NaN if there were no vehicles.
+	 */
+	public double getPercentile(double percentile) {
+		long[] counts = new long[NUMBER_OF_BUCKETS];
+		long n = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return Double.NaN;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * Math.min(percentile, 100.) / 100.));
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return (bucketStart(i) + (bucketWidth(i) - 1) / 2.) / 1000.;
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Vehicles per second in the last complete windows before the given time.
+	 *
+	 * @param time Current simulation time
+	 * @param windows Number of windows (at most the number of kept windows)
+	 */
+	public double getThroughput(double time, int windows) {
+		windows = Math.max(1, Math.min(windows, NUMBER_OF_WINDOWS - 1));
+		long current = (long) Math.floor(time / window_length);
+		long arrivals = 0;
+		for (long window = current - windows; window < current; window++) {
+			int slot = (int) Math.floorMod(window, (long) NUMBER_OF_WINDOWS);
+			if (window_numbers.get(slot) == window) {
+				arrivals += window_counts.get(slot);
+			}
+		}
+		return arrivals / (windows * window_length);
+	}
+
+	public double getWindowLength() {
+		return window_length;
+	}
+
+	/**
+	 * Write the summary and the non-empty buckets of the histogram as CSV
+	 * (bucket start and end in seconds, number of vehicles).
+	 */
+	public void export(String name, PrintWriter out) {
+		out.printf(Locale.ROOT, "# %s: count %d, mean %.3f s, p50 %.3f s, p95 %.3f s, p99 %.3f s, max %.3f s%n",
+				name, getCount(), getMean(), getPercentile(50), getPercentile(95), getPercentile(99), getMax());
+		out.println("from_s,to_s,vehicles");
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			long n = buckets.get(i);
+			if (n > 0) {
+				out.printf(Locale.ROOT, "%.3f,%.3f,%d%n", bucketStart(i) / 1000.,
+						(bucketStart(i) + bucketWidth(i)) / 1000., n);
+			}
+		}
+		out.flush();
+	}
+}
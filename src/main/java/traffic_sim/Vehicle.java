@@ -4,7 +4,6 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
 /**
  * Vehicles are moving around in the traffic sim.
@@ -12,19 +11,35 @@ import java.util.Random;
  * There could be more distinct types (cars, bikes  ...).
  * A vehicle is always related to a current lane and the position
  * is one dimensional with respect to that lane.
+ * <p>
+ * The frequently updated state (position, velocity, lane ...) is not kept in the
+ * vehicle itself but in a VehicleStateStore - the vehicle is a handle onto its slot
+ * in the store. In the simulations, the lane calls the update of positions for the
+ * vehicles in that lane directly on the store.
+ * <p>
+ * Vehicles produced by the producers come from the VehiclePool of the world and
+ * are recycled when they leave the simulation. The name is only created when it
+ * is asked for and the list of destinations only when there is more than one.
+ * <p>
+ * Handles handed out by the simulation (Lane.getVehiclesOnLane(), sensor samples,
+ * crossing detectors ...) are only valid until the vehicle leaves the simulation:
+ * afterwards the handle throws an IllegalStateException - and once the pool hands
+ * it out again, it stands for another vehicle. Whoever keeps a handle across
+ * simulation steps has to keep its generation as well and check it with
+ * checkGeneration() before using the handle again (or switch off the recycling
+ * of the pool, see VehiclePool.setRecycling()).
  */
 public class Vehicle {
 
+	// Created from the production time when asked for (if not given).
 	private String name;
-	// This is currently the target velocity,
-	// there is no acceleration - vehicles will simply have this velocity if possible.
-	private double current_velocity;
-	// Position in the current lane.
-	private double position;
-	// The lane of the vehicle.
-	// In the simulations, the lane calls the update of positions for the vehicles in
-	// that lane.
-	private Lane current_lane;
+	// Vehicles from the pool are given back to the pool when leaving the simulation.
+	private final boolean pooled;
+	// The store holding the state of the vehicle and the slot of the vehicle inside.
+	private final VehicleStateStore store;
+	private int slot;
+	// Incremented when the vehicle leaves the simulation (the handle may be reused).
+	private int generation = 0;
 	// Time when the car was produced.
 	private double startTime;
 	/**
@@ -32,17 +47,17 @@ public class Vehicle {
 	 */
 	private Destination current_destination;
 	/**
-	 * All other destinations the vehicle should reach.
+	 * All other destinations the vehicle should reach (null as long as there are none).
 	 */
 	private List<Destination> destinations;
 	/**
 	 * Car's acceleration.
 	 */
-	private final double ACCEL;
+	private static final double ACCEL = 10;
 	/**
 	 * Car's maximal velocity.
 	 */
-	private final double MAX_VELOCITY;
+	private static final double MAX_VELOCITY = 40;
 	/**
 	 * Car's global position.
 	 */
@@ -52,51 +67,91 @@ public class Vehicle {
 	 */
 	private double current_direction;
 
-	/**
-	 * Random number generator.
-	 */
-	private static Random randomOracle = new Random();
-	private double remaining = 0.0;
-
 	/*
 	 * Constructor - a vehicle always requires a lane.
 	 */
 	public Vehicle(String name, Lane lane) {
 		super();
 		this.name = name;
+		this.pooled = false;
+		this.store = lane.store;
+		enterSimulation(lane);
+	}
+
+	/*
+	 * Vehicle constructed by the VehiclePool.
+	 */
+	Vehicle(Lane lane, boolean pooled) {
+		this.pooled = pooled;
+		this.store = lane.store;
+		enterSimulation(lane);
+	}
 
-		current_lane = lane;
+	/*
+	 * Reset a recycled vehicle - it enters the simulation again as a new vehicle.
+	 */
+	void reset(Lane lane) {
+		name = null;
+		current_destination = null;
+		destinations = null;
+		global_position = null;
+		current_direction = 0;
+		enterSimulation(lane);
+	}
+
+	private void enterSimulation(Lane lane) {
+		this.slot = store.allocate(this);
+		store.velocity[slot] = 40.;
+		store.acceleration[slot] = ACCEL;
+		store.max_velocity[slot] = MAX_VELOCITY;
 		lane.addVehicleToLane(this);
-		this.position = 0;
-		this.current_velocity = 40.;
-		this.ACCEL = 10;
-		this.MAX_VELOCITY = 40;
-		destinations = new ArrayList<>();
 
-		startTime = TemporalTrafficObject.getCurrentTime();
+		startTime = lane.getWorld().getCurrentTime();
+	}
+
+	/*
+	 * Name of the vehicle - by default the time it was produced.
+	 */
+	public String getName() {
+		if (name == null) {
+			name = "Car_" + startTime;
+		}
+		return name;
 	}
 
 	/*
 	 * Get the current position in the related lane.
 	 */
 	public double getPositionInLane() {
-		return this.position;
+		return store.position[checkSlot()];
 	}
 
 	/*
-	 * Update the position in the lane.
+	 * Update the position in the lane (detectors the vehicle jumps over are passed).
 	 */
 	public void setPositionInLane(double pos) {
-		this.position = pos;
+		int slot = checkSlot();
+		double oldPos = store.position[slot];
+		store.position[slot] = pos;
+		getCurrentLane().passDetectors(slot, oldPos, pos, 0.);
 		//System.out.println("POS : " + this.position + " - " + this.name);
 	}
 
 	/*
 	 * Remove a vehicle from a lane.
+	 * The vehicle leaves the simulation and gives back its slot in the store
+	 * (and itself to the pool, if it came from there). A vehicle can only be
+	 * removed once.
 	 */
 	public void removeVehicleFromLane() {
-		current_lane.removeVehicleFromLane(this);
-		this.current_lane = null;
+		Lane lane = getCurrentLane();
+		lane.removeVehicleFromLane(this);
+		store.release(slot);
+		slot = -1;
+		generation++;
+		if (pooled) {
+			lane.getWorld().getVehiclePool().recycle(this);
+		}
 	}
 
 	/*
@@ -104,10 +159,12 @@ public class Vehicle {
 	 */
 	public boolean switchToLane(Lane newLane) {
 		//this.position = velocity - ( current_lane.getDistanceToEnd( position ) );
+		int slot = checkSlot();
 		if (newLane.spaceForNewCarAvailable()) {
-			current_lane.removeVehicleFromLane(this);
+			getCurrentLane().removeVehicleFromLane(this);
+			// The position is set first - the new lane passes its detectors up to it.
+			store.position[slot] = store.remaining[slot];
 			newLane.addVehicleToLane(this);
-			this.position = remaining;
 			return true;
 		}
 		else {
@@ -126,39 +183,99 @@ public class Vehicle {
 
 	/*
 	 * Choose the next lane the vehicle enters.
-	 * Currently this is done randomly.
+	 * A vehicle with a destination follows the routing table of the world,
+	 * otherwise this is done randomly (by the lane the vehicle is leaving).
 	 */
 	private Lane chooseNextLane(List<Lane> lanes) {
-		int numberOfLanes = lanes.size();
-		int chosenLane = randomOracle.nextInt(numberOfLanes);
-		return lanes.get(chosenLane);
+		Lane lane = getCurrentLane();
+		Lane routed = routeTowardsDestination(lane);
+		if (routed != null && lanes.contains(routed)) {
+			return routed;
+		}
+		return lane.chooseNextLane(lanes);
+	}
+
+	/*
+	 * Next lane on the shortest way to the consumer of the current destination
+	 * (null if there is no destination or no way).
+	 */
+	private Lane routeTowardsDestination(Lane lane) {
+		if (current_destination == null || current_destination.getConsumer() == null) {
+			return null;
+		}
+		return lane.getWorld().getRoutingTable().nextLane(lane, current_destination.getConsumer());
+	}
+
+	/*
+	 * Slot of the vehicle in the VehicleStateStore (-1 after leaving the simulation).
+	 */
+	int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Generation of the handle: it changes when the vehicle leaves the simulation,
+	 * so a handle which was reused by the VehiclePool has another generation.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Throws an IllegalStateException if the handle does not stand for the vehicle
+	 * of the given generation anymore (the vehicle left the simulation).
+	 */
+	public void checkGeneration(int expectedGeneration) {
+		if (generation != expectedGeneration) {
+			throw new IllegalStateException("Stale handle of a vehicle which left the simulation"
+					+ " (generation " + expectedGeneration + ", now " + generation + ")");
+		}
+	}
+
+	/*
+	 * Slot of the vehicle - a vehicle which left the simulation has no state any more.
+	 */
+	int checkSlot() {
+		if (slot < 0) {
+			throw new IllegalStateException("Vehicle " + getName() + " already left the simulation");
+		}
+		return slot;
 	}
 
 	/*
 	 * Set current lane.
 	 */
 	public void setCurrentLane(Lane lane) {
-		this.current_lane = lane;
+		store.lane_id[checkSlot()] = (lane == null) ? -1 : lane.getId();
+	}
+
+	/*
+	 * Get current lane.
+	 */
+	public Lane getCurrentLane() {
+		return store.getLane(store.lane_id[checkSlot()]);
 	}
 
 	public void addDestination(Destination dest) {
+		int slot = checkSlot();
 		if (current_destination == null ||
-			(current_destination.getRemaining_wait_sec() == 0 && destinations.isEmpty())) {
+			(current_destination.getRemaining_wait_sec() == 0 && !hasMoreDestinations())) {
 			current_destination = dest;
 		} else {
+			if (destinations == null) {
+				destinations = new ArrayList<>();
+			}
 			destinations.add(dest);
 		}
+		store.has_destination[slot] = true;
 	}
 
 	/*
 	 * Return the current target velocity of the vehicle. If car ahaed is too close reduce velocity.
 	 */
 	public double getCurrentVelocity() {
-		Vehicle in_front = current_lane.getVehicleInFront(this);
-		if (in_front != null && getFrontVehicleDistance(in_front) < 1.5 * Lane.min_car_distance) {
-			decelerate(in_front.getCurrentVelocity());
-		}
-		return this.current_velocity;
+		int slot = checkSlot();
+		return getCurrentLane().currentVelocity(store.lane_sequence[slot], slot);
 	}
 
 	/**
@@ -168,12 +285,8 @@ public class Vehicle {
 	 * @param timedelta Elapsed time since last acceleration call
 	 */
 	public void accelerate(double timedelta) {
-		Vehicle in_front = current_lane.getVehicleInFront(this);
-		if (in_front == null ||
-			(in_front != null && getFrontVehicleDistance(in_front) >= 2 * Lane.min_car_distance)) {
-			current_velocity += timedelta * ACCEL;
-			current_velocity = current_velocity > MAX_VELOCITY ? MAX_VELOCITY : current_velocity;
-		}
+		int slot = checkSlot();
+		getCurrentLane().accelerateVehicle(store.lane_sequence[slot], slot, timedelta);
 	}
 
 	/**
@@ -182,18 +295,14 @@ public class Vehicle {
 	 * @param goal_velocity Velocity to decelerate to
 	 */
 	public void decelerate(double goal_velocity) {
-		if (goal_velocity < 0) {
-			stop();
-		} else {
-			current_velocity = goal_velocity < current_velocity ? goal_velocity : current_velocity;
-		}
+		store.decelerate(checkSlot(), goal_velocity);
 	}
 
 	/**
 	 * Stop the car immediately.
 	 */
 	public void stop() {
-		current_velocity = 0;
+		store.velocity[checkSlot()] = 0;
 	}
 
 	public Point getGlobal_position() {
@@ -236,6 +345,12 @@ public class Vehicle {
 		if (possible_decisions.isEmpty()) {
 			return null;
 		}
+		// Lookup in the routing table - the angles are only used when
+		// the destination can not be reached by the lanes.
+		Lane routed = routeTowardsDestination(getCurrentLane());
+		if (routed != null && possible_decisions.containsKey(routed)) {
+			return routed;
+		}
 		for (Lane lane : possible_decisions.keySet()) {
 			if (lane.end_connection.equals(current_destination.getConsumer())) {
 				return lane;
@@ -276,42 +391,36 @@ public class Vehicle {
 		}
 	}
 
-	public void update(double elapsed_secs) {
-		//Destination update
+	/**
+	 * Update of the destinations (waiting at the current destination).
+	 */
+	void updateDestination(double elapsed_secs) {
 		if (current_destination != null) {
 			if (current_destination.isAt_destination()) {
 				current_destination.updateWait(elapsed_secs);
 			}
 			if (current_destination.getRemaining_wait_sec() == 0) {
-				if (!destinations.isEmpty()) {
+				if (hasMoreDestinations()) {
 					current_destination = destinations.remove(0);
 				} else {
 					//TODO What to do after the last destination is finished
 				}
 			}
 		}
+	}
 
-		//Try to accelerate all the time
-		accelerate(elapsed_secs);
-		Vehicle in_front = current_lane.getVehicleInFront(this);
-		double driven_delta = getCurrentVelocity() * elapsed_secs;
-		//If vehicle gets to close to preceding vehicle, decelerate and hold some distance
-		if (in_front != null && driven_delta > getFrontVehicleDistance(in_front) - current_lane.min_car_distance) {
-			decelerate(in_front.getCurrentVelocity());
-			driven_delta = getFrontVehicleDistance(in_front) - current_lane.min_car_distance;
-		}
-		double new_pos = position + driven_delta;
-		if (new_pos >= current_lane.getLength()) {
-			remaining = new_pos - current_lane.getLength();
-			if (!current_lane.end_connection.tryToConsumeVehicle(this)) {
-				stop();
-				new_pos = current_lane.getLength();
-				setPositionInLane(new_pos);
-			}
-		} else {
-			setPositionInLane(new_pos);
-			current_lane.free_until = new_pos - Lane.min_car_distance;
-		}
+	private boolean hasMoreDestinations() {
+		return (destinations != null) && !destinations.isEmpty();
+	}
+
+	/**
+	 * Update the vehicle: destinations and the movement along the current lane
+	 * (the movement is calculated by the lane on the VehicleStateStore).
+	 */
+	public void update(double elapsed_secs) {
+		int slot = checkSlot();
+		updateDestination(elapsed_secs);
+		getCurrentLane().moveVehicle(store.lane_sequence[slot], slot, elapsed_secs, false);
 	}
 
 	public double getTimeOfProduction() {
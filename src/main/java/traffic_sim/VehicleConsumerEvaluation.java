@@ -6,16 +6,24 @@ import java.awt.Point;
  * VehicleConsumerLogger
  *
  * Extends the VehicleConsumer, logs data from the leaving vehicles (number, average time).
+ * The travel times and the throughput are collected in TravelTimeStatistics as well
+ * (percentiles of the travel time, can be queried while the simulation is running).
  */
 public class VehicleConsumerEvaluation extends VehicleConsumer {
 
+	// The world the evaluation belongs to (providing the current time).
+	private final SimulationWorld world;
 	private String name;
 	private int number_of_cars = 0;
 	private double total_time = 0.;
+	private final TravelTimeStatistics statistics = new TravelTimeStatistics();
 	
 	public VehicleConsumerEvaluation(int xCoordinate, int yCoordinate, String name) {
     	super(xCoordinate, yCoordinate);
 		this.name = name;
+		// All evaluations are registered in their world - used for collecting results of a run.
+		this.world = SimulationWorld.current();
+		world.addEvaluation(this);
     }
 
     /*
@@ -26,7 +34,9 @@ public class VehicleConsumerEvaluation extends VehicleConsumer {
     @Override
 	public boolean tryToConsumeVehicle(Vehicle veh) {
 		number_of_cars = number_of_cars + 1;
-		total_time = total_time + ( TemporalTrafficObject.getCurrentTime() - veh.getTimeOfProduction() );
+		double travel_time = world.getCurrentTime() - veh.getTimeOfProduction();
+		total_time = total_time + travel_time;
+		statistics.record(world.getCurrentTime(), travel_time);
 		
 		if (number_of_cars % 10 == 0) {
 			System.out.println("TURNOUT AT " + this.name + " - Cars: " + number_of_cars + " ; AverageTime: " + this.getAverageTimeOfVehicles() );
@@ -43,4 +53,12 @@ public class VehicleConsumerEvaluation extends VehicleConsumer {
     	return number_of_cars;
     }
 
+    public TravelTimeStatistics getStatistics() {
+    	return statistics;
+    }
+
+    public String getName() {
+    	return name;
+    }
+
 }
\ No newline at end of file
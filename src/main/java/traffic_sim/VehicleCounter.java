@@ -1,68 +1,153 @@
 package traffic_sim;
 
-import java.util.HashSet;
 import java.util.Random;
-import java.util.Set;
 import java.util.stream.IntStream;
 
 /**
  * A sensor that can be added to a lane. It counts passing vehicles with a certain accuracy
  * and gives a relative frequency of passing vehicles per turn.
  *
+ * The counter is a detector of the lane at its position (like an induction loop):
+ * the lane reports each car passing the position with the exact time and speed, so
+ * the counter does not have to look at the cars on the lane. Besides the number of
+ * vehicles it measures the mean speed, the headways (time between two vehicles) and
+ * the occupancy (share of the time a vehicle is above the detector). The accuracy only
+ * applies to the counted vehicles - speed, headways and occupancy are measured from
+ * every crossing.
+ *
  * @author srottschaefer.
  * @date 29.01.16
  */
-public class VehicleCounter extends TemporalTrafficObject{
+public class VehicleCounter extends LaneSensor {
+
+	// Length of a vehicle (plus detector) assumed for the occupancy.
+	private static final double VEHICLE_LENGTH = 5.;
 
-	private final Lane lane;
 	private final double position;
 	private long total_vehicles;
 	private int[] vehicle_history;
 	private int hist_pos = 0;
 	private final float accuracy;
-	private final Set<Vehicle> already_counted;
+	// Vehicles counted since the last update.
+	private int detected = 0;
 	private final Random random;
+	// Data of all crossing vehicles.
+	private final double start_time;
+	private long crossings = 0;
+	private double last_crossing_time = Double.NaN, last_crossing_velocity = Double.NaN;
+	private double total_velocity = 0., total_headway = 0., occupied_time = 0.;
 
 	public VehicleCounter(Lane lane, double position, float accuracy, int hist_length) {
-		this.lane = lane;
-		if (position <= lane.getLength()) {
-			this.position = position;
-		}
-		else {
-			this.position = lane.getLength();
-		}
+		super(lane, position, position);
+		this.position = window_start;
 		this.accuracy = accuracy > 0 ? accuracy : 0.5f;
 		total_vehicles = 0;
 		vehicle_history = new int[hist_length > 0 ? hist_length : 1];
-		already_counted = new HashSet<>();
-		random = new Random(System.currentTimeMillis());
+		random = world.newRandom();
+		start_time = world.getCurrentTime();
+		detectCrossings();
 	}
 
+	/**
+	 * A vehicle passed the counter - counted with the accuracy of the counter.
+	 */
 	@Override
-	public synchronized void updateStep(double duration) {
-		int counter = 0;
-		for (Vehicle v : lane.vehiclesOnLane) {
-			if (v.getPositionInLane() > position && !already_counted.contains(v)) {
-				if (random.nextDouble() <= accuracy) {
-					counter++;
-				}
-				already_counted.add(v);
-			}
+	public synchronized void vehicleCrossed(Vehicle vehicle, double time, double velocity) {
+		crossings++;
+		if (crossings > 1) {
+			total_headway += time - last_crossing_time;
 		}
-		total_vehicles += counter;
-		already_counted.retainAll(lane.vehiclesOnLane);
-		vehicle_history[hist_pos] = counter;
+		total_velocity += velocity;
+		if (velocity > 0.) {
+			occupied_time += VEHICLE_LENGTH / velocity;
+		}
+		last_crossing_time = time;
+		last_crossing_velocity = velocity;
+		if (random.nextDouble() <= accuracy) {
+			detected++;
+			total_vehicles++;
+		}
+	}
+
+	/*
+	 * The counter gets the vehicles from the crossings, not from the window.
+	 */
+	@Override
+	protected boolean samplesWindow() {
+		return false;
+	}
+
+	@Override
+	protected synchronized void sense(Sample sample, double duration) {
+		vehicle_history[hist_pos] = detected;
+		detected = 0;
 		hist_pos++;
 		hist_pos = hist_pos == vehicle_history.length ? 0 : hist_pos;
 	}
 
+	/**
+	 * On an empty lane only zeros would be added to the history - when the history
+	 * only contains zeros the counter can sleep until the lane wakes it up.
+	 */
+	@Override
+	protected synchronized boolean isIdle() {
+		return detected == 0 && IntStream.of(vehicle_history).allMatch(count -> count == 0);
+	}
+
 	public synchronized long getTotal_vehicles() {
 		return total_vehicles;
 	}
 
+	/*
+	 * Number of vehicles which passed the counter (counted or not).
+	 */
+	public synchronized long getNumberOfCrossings() {
+		return crossings;
+	}
+
 	public synchronized double getRelativeFreq() {
 		return ((double) IntStream.of(vehicle_history).sum()) / vehicle_history.length;
 	}
 
+	/*
+	 * Time of the last vehicle passing the counter (NaN if there was none).
+	 */
+	public synchronized double getLastCrossingTime() {
+		return last_crossing_time;
+	}
+
+	/*
+	 * Velocity of the last vehicle passing the counter (NaN if there was none).
+	 */
+	public synchronized double getLastCrossingVelocity() {
+		return last_crossing_velocity;
+	}
+
+	/*
+	 * Mean velocity of the passing vehicles (NaN if there were none).
+	 */
+	public synchronized double getMeanVelocity() {
+		return (crossings == 0) ? Double.NaN : total_velocity / crossings;
+	}
+
+	/*
+	 * Mean time between two passing vehicles (NaN if there were less than two).
+	 */
+	public synchronized double getMeanHeadway() {
+		return (crossings < 2) ? Double.NaN : total_headway / (crossings - 1);
+	}
+
+	/*
+	 * Share of the time since the counter was created in which a vehicle was above it.
+	 */
+	public synchronized double getOccupancy() {
+		double elapsed = world.getCurrentTime() - start_time;
+		return (elapsed > 0.) ? Math.min(1., occupied_time / elapsed) : 0.;
+	}
+
+	public double getPosition() {
+		return position;
+	}
+
 	//public synchronized SomeState getFreqAsState()
 }
@@ -0,0 +1,83 @@
+package traffic_sim;
+
+import java.util.Arrays;
+
+/**
+ * VehiclePool
+ *
+ * Vehicles leaving the simulation are not dropped but kept in the pool of their world
+ * and handed out again (reset) when a producer needs a new vehicle, so a running
+ * simulation does not allocate vehicles anymore once enough vehicles are in circulation.
+ *
+ * Only vehicles obtained from the pool are recycled - vehicles constructed directly
+ * might still be referenced by whoever constructed them. A handle of a recycled
+ * vehicle stands for a new vehicle: see Vehicle.getGeneration() for keeping handles
+ * across steps, or switch the recycling off (setRecycling(false)) - the results of
+ * the simulation do not depend on it.
+ * The pool is used from the simulation thread (producers and consumers are updated
+ * in order, also in the two phase update).
+ */
+public class VehiclePool {
+
+	private Vehicle[] free_vehicles = new Vehicle[64];
+	private int number_of_free_vehicles = 0;
+	private long created = 0;
+	private boolean recycling = true;
+
+	/**
+	 * A vehicle entering the given lane - a recycled one if available.
+	 */
+	public Vehicle obtain(Lane lane) {
+		if (number_of_free_vehicles > 0) {
+			Vehicle veh = free_vehicles[--number_of_free_vehicles];
+			free_vehicles[number_of_free_vehicles] = null;
+			veh.reset(lane);
+			return veh;
+		}
+		created++;
+		return new Vehicle(lane, true);
+	}
+
+	/*
+	 * Take back a vehicle which left the simulation.
+	 */
+	void recycle(Vehicle veh) {
+		if (!recycling) {
+			return;
+		}
+		if (number_of_free_vehicles == free_vehicles.length) {
+			free_vehicles = Arrays.copyOf(free_vehicles, number_of_free_vehicles * 2);
+		}
+		free_vehicles[number_of_free_vehicles++] = veh;
+	}
+
+	public boolean isRecycling() {
+		return recycling;
+	}
+
+	/**
+	 * Switch the reuse of vehicles on or off - without recycling every vehicle
+	 * entering the simulation is a new object and handles are never reused.
+	 */
+	public void setRecycling(boolean recycling) {
+		this.recycling = recycling;
+		if (!recycling) {
+			Arrays.fill(free_vehicles, 0, number_of_free_vehicles, null);
+			number_of_free_vehicles = 0;
+		}
+	}
+
+	/*
+	 * Number of vehicles waiting in the pool.
+	 */
+	public int getNumberOfFreeVehicles() {
+		return number_of_free_vehicles;
+	}
+
+	/*
+	 * Number of vehicles constructed by the pool.
+	 */
+	public long getNumberOfCreatedVehicles() {
+		return created;
+	}
+}
@@ -13,6 +13,18 @@ import java.util.Collections;
  * VehicleProducer are startpoints of lanes, in this case
  * cars simply are appearing every couple of time steps - therefore it is a
  * TemporalTrafficObject which are all called in simulation update steps.
+ *
+ * In each step a car appears with probability 1/vehicleProductionRate. Instead of
+ * drawing this every step, the number of steps until the next car appears is drawn
+ * (geometrically distributed), so the producer only has to be updated
+ * when a car appears or the traffic situation changes (event driven mode).
+ *
+ * Instead of the random traffic situations the producer can follow an ArrivalProfile
+ * (given to the producer or to the whole world): the arrival times are then sampled
+ * from the time varying rate of the profile.
+ *
+ * The random source is split off the seed of the world. When the world replays a
+ * recording the cars appear at the recorded times instead.
  */
 public class VehicleProducer extends TemporalTrafficObject implements VehicleProducerInterface {
 
@@ -32,17 +44,24 @@ public class VehicleProducer extends TemporalTrafficObject implements VehiclePro
 		}
 		
 		private static final int SIZE = VALUES.size();
-		private static final Random RANDOM = new Random();
 
-		public static TrafficSituation randomTrafficSituation()  {
-			return VALUES.get(RANDOM.nextInt(SIZE));
+		public static TrafficSituation randomTrafficSituation(Random random)  {
+			return VALUES.get(random.nextInt(SIZE));
   		}
 	}
 	
 	private TrafficSituation currentTrafficSituation = TrafficSituation.MEDIUM;
-    private double time = 0.;
-    private Random randomGenerator = new Random();
-    private double nextTrafficSituationChangeTime = (double) (randomGenerator.nextInt(20));
+    // Separate random sources for the traffic situation and the arrivals: the traffic
+    // situations stay the same when the arrivals are replayed.
+    private final Random situationRandom = world.newRandom();
+    private Random randomGenerator = world.newRandom();
+    // Number of the producer in a recording of the world.
+    private final int producer_id = world.registerProducer();
+    private double nextTrafficSituationChangeTime = (double) (situationRandom.nextInt(20));
+    // Time the next car appears - NaN if it has to be drawn in the next update.
+    private double nextArrivalTime = Double.NaN;
+    // Demand of this producer (null: the profile of the world or the traffic situations).
+    private ArrivalProfile arrivalProfile;
 
     public VehicleProducer() {
     	super();
@@ -64,17 +83,65 @@ public class VehicleProducer extends TemporalTrafficObject implements VehiclePro
      */
     @Override
 	public void updateStep(double duration) {
-		if (time > nextTrafficSituationChangeTime) {
-			currentTrafficSituation = TrafficSituation.randomTrafficSituation();
+		double time = world.getCurrentTime();
+		ArrivalProfile profile = getArrivalProfile();
+		if (profile == null && time > nextTrafficSituationChangeTime) {
+			currentTrafficSituation = TrafficSituation.randomTrafficSituation(situationRandom);
 			//System.out.println("Switched Traffic Situation: " + currentTrafficSituation);
-			nextTrafficSituationChangeTime = time + (double) (randomGenerator.nextInt(20));
+			nextTrafficSituationChangeTime = time + (double) (situationRandom.nextInt(20));
+			// The production rate changed (recorded arrivals stay as they are).
+			if (!isReplaying()) {
+				nextArrivalTime = Double.NaN;
+			}
+		}
+		if (Double.isNaN(nextArrivalTime)) {
+			nextArrivalTime = isReplaying() ? world.getRecording().nextArrival(producer_id)
+					: (profile != null) ? profile.nextArrivalTime(time - duration / 2, randomGenerator)
+					: time + stepsUntilNextVehicle() * duration;
 		}
-		if (randomGenerator.nextInt(currentTrafficSituation.vehicleProductionRate) == 0) {
+		if (time >= nextArrivalTime - duration / 2) {
+			SimulationRecording recording = world.getRecording();
+			if (recording != null && recording.getMode() == SimulationRecording.Mode.RECORD) {
+				recording.recordArrival(producer_id, time);
+			}
 			if (this.lane_starts.spaceForNewCarAvailable() ) {
-				new Vehicle( ("Car_" + time), this.lane_starts );
+				world.getVehiclePool().obtain(this.lane_starts);
 			}
+			// At most one car per step - arrivals of the profile in the same step are dropped.
+			nextArrivalTime = isReplaying() ? recording.nextArrival(producer_id)
+					: (profile != null) ? profile.nextArrivalTime(time + duration / 2, randomGenerator)
+					: time + (1 + stepsUntilNextVehicle()) * duration;
+		}
+	}
+
+	private boolean isReplaying() {
+		SimulationRecording recording = world.getRecording();
+		return recording != null && recording.getMode() == SimulationRecording.Mode.REPLAY;
+	}
+
+	/*
+	 * Number of steps without a new car before the next car appears.
+	 */
+	private long stepsUntilNextVehicle() {
+		int rate = currentTrafficSituation.vehicleProductionRate;
+		if (rate <= 1) {
+			return 0;
+		}
+		return (long) Math.floor(Math.log(1. - randomGenerator.nextDouble()) / Math.log(1. - 1. / rate));
+	}
+
+	/**
+	 * The producer is only updated when the next car appears or the traffic situation changes.
+	 */
+	@Override
+	public double getNextEventTime() {
+		if (Double.isNaN(nextArrivalTime)) {
+			return super.getNextEventTime();
+		}
+		if (getArrivalProfile() != null) {
+			return nextArrivalTime;
 		}
-		time += duration;
+		return Math.min(nextArrivalTime, nextTrafficSituationChangeTime);
 	}
 
 	/*
@@ -86,6 +153,37 @@ public class VehicleProducer extends TemporalTrafficObject implements VehiclePro
 		return currentTrafficSituation;
 	}
 
+	/*
+	 * The demand of the producer - its own profile or the one of the world
+	 * (null if it follows the traffic situations).
+	 */
+	public ArrivalProfile getArrivalProfile() {
+		return (arrivalProfile != null) ? arrivalProfile : world.getArrivalProfile();
+	}
+
+	public void setArrivalProfile(ArrivalProfile profile) {
+		this.arrivalProfile = profile;
+		demandChanged();
+	}
+
+	/*
+	 * The profile set for this producer only (null if it follows the world).
+	 */
+	ArrivalProfile getOwnArrivalProfile() {
+		return arrivalProfile;
+	}
+
+	/*
+	 * The demand changed (e.g. the profile of the world) - the next arrival is sampled
+	 * again. A replay keeps the recorded arrivals.
+	 */
+	void demandChanged() {
+		if (!isReplaying()) {
+			nextArrivalTime = Double.NaN;
+		}
+		wakeUp();
+	}
+
 	@Override
 	public void setLaneStarting(Lane lane) {
 		this.lane_starts = lane;
@@ -0,0 +1,174 @@
+package traffic_sim;
+
+import java.util.Arrays;
+
+/**
+ * VehicleStateStore
+ *
+ * Holds the frequently updated state of all vehicles (position, velocity, lane ...)
+ * in parallel primitive arrays. A Vehicle is only a handle onto its slot in these
+ * arrays, so that the lanes can move their vehicles in tight loops over the arrays
+ * instead of following references to many small objects.
+ *
+ * Slots of vehicles which left the simulation are reused for new vehicles.
+ * Each SimulationWorld has its own store.
+ */
+public class VehicleStateStore {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Vehicle state - all arrays are indexed by the slot of a vehicle.
+	double[] position;
+	double[] velocity;
+	// Distance driven beyond the end of the lane when switching to the next lane.
+	double[] remaining;
+	double[] acceleration;
+	double[] max_velocity;
+	// Id of the current lane, -1 if the vehicle is not on a lane.
+	int[] lane_id;
+	// Sequence number in the ordered storage of the current lane.
+	long[] lane_sequence;
+	boolean[] has_destination;
+	// The handles belonging to the slots.
+	Vehicle[] vehicles;
+
+	private int[] free_slots;
+	private int number_of_free_slots = 0;
+	private int used_slots = 0;
+
+	// All lanes, indexed by their id.
+	private Lane[] lanes = new Lane[INITIAL_CAPACITY];
+	private int number_of_lanes = 0;
+	// Incremented when lanes are added or connected differently (see RoutingTable).
+	private int network_version = 0;
+
+	public VehicleStateStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public VehicleStateStore(int capacity) {
+		capacity = capacity > 0 ? capacity : INITIAL_CAPACITY;
+		position = new double[capacity];
+		velocity = new double[capacity];
+		remaining = new double[capacity];
+		acceleration = new double[capacity];
+		max_velocity = new double[capacity];
+		lane_id = new int[capacity];
+		lane_sequence = new long[capacity];
+		has_destination = new boolean[capacity];
+		vehicles = new Vehicle[capacity];
+		free_slots = new int[capacity];
+	}
+
+	/**
+	 * Reserve a slot for a new vehicle. The state of the slot is reset.
+	 *
+	 * @param veh The handle for the slot
+	 * @return The slot of the vehicle
+	 */
+	int allocate(Vehicle veh) {
+		int slot;
+		if (number_of_free_slots > 0) {
+			slot = free_slots[--number_of_free_slots];
+		} else {
+			if (used_slots == vehicles.length) {
+				grow();
+			}
+			slot = used_slots++;
+		}
+		position[slot] = 0.;
+		velocity[slot] = 0.;
+		remaining[slot] = 0.;
+		acceleration[slot] = 0.;
+		max_velocity[slot] = 0.;
+		lane_id[slot] = -1;
+		lane_sequence[slot] = 0;
+		has_destination[slot] = false;
+		vehicles[slot] = veh;
+		return slot;
+	}
+
+	/**
+	 * Give back the slot of a vehicle which left the simulation.
+	 */
+	void release(int slot) {
+		if (vehicles[slot] == null) {
+			throw new IllegalStateException("Slot " + slot + " was already released");
+		}
+		vehicles[slot] = null;
+		lane_id[slot] = -1;
+		free_slots[number_of_free_slots++] = slot;
+	}
+
+	/**
+	 * Immediately decelerate to given velocity. Can only decrease velocity.
+	 */
+	void decelerate(int slot, double goal_velocity) {
+		if (goal_velocity < 0) {
+			velocity[slot] = 0;
+		} else {
+			velocity[slot] = goal_velocity < velocity[slot] ? goal_velocity : velocity[slot];
+		}
+	}
+
+	/**
+	 * Register a lane and return its id.
+	 */
+	int registerLane(Lane lane) {
+		if (number_of_lanes == lanes.length) {
+			lanes = Arrays.copyOf(lanes, lanes.length * 2);
+		}
+		lanes[number_of_lanes] = lane;
+		network_version++;
+		return number_of_lanes++;
+	}
+
+	/**
+	 * The connections of a lane changed.
+	 */
+	void networkChanged() {
+		network_version++;
+	}
+
+	/**
+	 * Version of the road network - it changes with every added or reconnected lane.
+	 */
+	int getNetworkVersion() {
+		return network_version;
+	}
+
+	/**
+	 * Get a lane by its id, null for -1.
+	 */
+	Lane getLane(int id) {
+		return id < 0 ? null : lanes[id];
+	}
+
+	/**
+	 * Number of registered lanes (the ids go from 0 to this number - 1).
+	 */
+	int getNumberOfLanes() {
+		return number_of_lanes;
+	}
+
+	/**
+	 * Number of vehicles currently in the store.
+	 */
+	public int getNumberOfVehicles() {
+		return used_slots - number_of_free_slots;
+	}
+
+	private void grow() {
+		int capacity = vehicles.length * 2;
+		position = Arrays.copyOf(position, capacity);
+		velocity = Arrays.copyOf(velocity, capacity);
+		remaining = Arrays.copyOf(remaining, capacity);
+		acceleration = Arrays.copyOf(acceleration, capacity);
+		max_velocity = Arrays.copyOf(max_velocity, capacity);
+		lane_id = Arrays.copyOf(lane_id, capacity);
+		lane_sequence = Arrays.copyOf(lane_sequence, capacity);
+		has_destination = Arrays.copyOf(has_destination, capacity);
+		vehicles = Arrays.copyOf(vehicles, capacity);
+		free_slots = Arrays.copyOf(free_slots, capacity);
+	}
+}
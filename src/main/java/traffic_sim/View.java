@@ -12,6 +12,7 @@ public class View {
     private final RoadPane trafficView;
     private JFrame frame;
     private JButton button;
+    private JCheckBox viewToggle;
 
     public View(){
         frame = new JFrame("Traffic Sim");
@@ -23,7 +24,11 @@ public class View {
 
         frame.getContentPane().add(trafficView, BorderLayout.CENTER);
         button = new JButton("EXIT");
-        frame.getContentPane().add(button, BorderLayout.SOUTH);
+        viewToggle = new JCheckBox("Show traffic", true);
+        JPanel controls = new JPanel(new BorderLayout());
+        controls.add(viewToggle, BorderLayout.WEST);
+        controls.add(button, BorderLayout.CENTER);
+        frame.getContentPane().add(controls, BorderLayout.SOUTH);
 
         frame.setVisible(true);
     }
@@ -32,6 +37,13 @@ public class View {
         return button;
     }
 
+    /*
+     * Switches the view of the traffic on and off.
+     */
+    public JCheckBox getViewToggle(){
+        return viewToggle;
+    }
+
     public RoadPane getTrafficView() {
         return trafficView;
     }
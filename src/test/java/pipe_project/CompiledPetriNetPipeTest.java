@@ -0,0 +1,86 @@
+package pipe_project;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.*;
+
+/**
+ * The compiled net fires the same transitions in the same order as PIPE
+ * (FFWTimePetriNetRunner) for a net as built by MainPN.
+ */
+public class CompiledPetriNetPipeTest extends TestCase {
+
+	private static final String TOKEN = "Default";
+	private static final Map<String, String> WEIGHT = Collections.singletonMap(TOKEN, "1");
+
+	/*
+	 * A cycle of timed and immediate transitions and a timed transition
+	 * inhibited by a place of the cycle. Firings are logged by the external actions.
+	 */
+	private static PetriNet buildNet(List<String> fired) throws PetriNetComponentException {
+		PetriNet net = new PetriNet();
+		net.addToken(new ColoredToken(TOKEN, Color.BLACK));
+		DiscretePlace a = addPlace(net, "A", 1);
+		DiscretePlace b = addPlace(net, "B", 0);
+		DiscretePlace c = addPlace(net, "C", 0);
+		DiscretePlace d = addPlace(net, "D", 1);
+		DiscretePlace e = addPlace(net, "E", 0);
+		Transition aToB = addTransition(net, "aToB", 300, fired);
+		Transition bToC = addTransition(net, "bToC", 0, fired);
+		Transition cToA = addTransition(net, "cToA", 700, fired);
+		Transition dToE = addTransition(net, "dToE", 450, fired);
+		Transition eToD = addTransition(net, "eToD", 250, fired);
+		net.addArc(new InboundNormalArc(a, aToB, WEIGHT));
+		net.addArc(new OutboundNormalArc(aToB, b, WEIGHT));
+		net.addArc(new InboundNormalArc(b, bToC, WEIGHT));
+		net.addArc(new OutboundNormalArc(bToC, c, WEIGHT));
+		net.addArc(new InboundNormalArc(c, cToA, WEIGHT));
+		net.addArc(new OutboundNormalArc(cToA, a, WEIGHT));
+		net.addArc(new InboundNormalArc(d, dToE, WEIGHT));
+		net.addArc(new OutboundNormalArc(dToE, e, WEIGHT));
+		net.addArc(new InboundNormalArc(e, eToD, WEIGHT));
+		net.addArc(new OutboundNormalArc(eToD, d, WEIGHT));
+		net.addArc(new InboundInhibitorArc(c, dToE));
+		return net;
+	}
+
+	private static DiscretePlace addPlace(PetriNet net, String id, int tokens) {
+		DiscretePlace place = new DiscretePlace(id, id);
+		for (int i = 0; i < tokens; i++) {
+			place.incrementTokenCount(TOKEN);
+		}
+		net.addPlace(place);
+		return place;
+	}
+
+	private static Transition addTransition(PetriNet net, String id, int delay, List<String> fired) {
+		DiscreteExternalActionCallTransition transition =
+				new DiscreteExternalActionCallTransition(id, id, () -> fired.add(id));
+		transition.setTimed(delay > 0);
+		transition.setDelay(delay);
+		net.addTransition(transition);
+		return transition;
+	}
+
+	public void testSameFiringsAsPipe() throws Exception {
+		List<String> pipeFired = new ArrayList<>();
+		List<String> compiledFired = new ArrayList<>();
+		FFWTimePetriNetRunner pipe = new FFWTimePetriNetRunner(buildNet(pipeFired));
+		pipe.startRealTimeClock();
+		CompiledPetriNetRunner compiled = new CompiledPetriNetRunner(buildNet(compiledFired));
+		for (int step = 0; step < 200; step++) {
+			pipe.stepFastForwardPetriNet(100);
+			compiled.stepFastForwardPetriNet(100);
+			assertEquals("firings up to step " + step, pipeFired, compiledFired);
+			assertEquals("marking after step " + step, pipe.getMarkingHash(), compiled.getNet().getMarkingHash());
+		}
+		assertFalse(compiledFired.isEmpty());
+	}
+}
@@ -0,0 +1,77 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Firing times of the incremental runner of the compiled nets.
+ */
+public class CompiledPetriNetRunnerTest extends TestCase {
+
+	private final List<String> fired = new ArrayList<>();
+
+	/*
+	 * Token moving around A -> B -> A (timed 300 and 500 ms) and an immediate
+	 * transition of higher priority emptying C.
+	 */
+	private CompiledPetriNetRunner buildRunner() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		builder.addPlace("A", 1);
+		builder.addPlace("B", 0);
+		builder.addPlace("C", 0);
+		int aToB = builder.addTransition("aToB", true, 300, 1, () -> fired.add("aToB"));
+		int bToA = builder.addTransition("bToA", true, 500, 1, () -> fired.add("bToA"));
+		int empty = builder.addTransition("emptyC", false, 0, 2, () -> fired.add("emptyC"));
+		builder.addInputArc("A", aToB, 1);
+		builder.addOutputArc(aToB, "B", 1);
+		builder.addInputArc("B", bToA, 1);
+		builder.addOutputArc(bToA, "A", 1);
+		builder.addInputArc("C", empty, 1);
+		return new CompiledPetriNetRunner(builder.build());
+	}
+
+	public void testTimedTransitionsFireAfterTheirDelay() throws Exception {
+		CompiledPetriNetRunner runner = buildRunner();
+		assertEquals(300, runner.getNextFiringTime());
+		runner.stepFastForwardPetriNet(299);
+		assertTrue(fired.isEmpty());
+		runner.stepFastForwardPetriNet(1);
+		assertEquals("[aToB]", fired.toString());
+		assertEquals(800, runner.getNextFiringTime());
+		// One long step fires everything due in it.
+		runner.stepFastForwardPetriNet(1700);
+		assertEquals("[aToB, bToA, aToB, bToA, aToB]", fired.toString());
+		assertEquals(2000, runner.getPNTimeSinceStart());
+	}
+
+	public void testMarkedPlaceEnablesImmediateTransition() throws Exception {
+		CompiledPetriNetRunner runner = buildRunner();
+		runner.markPlace("C", "Default", 1);
+		assertEquals(0, runner.getNextFiringTime());
+		runner.stepFastForwardPetriNet(100);
+		assertEquals("[emptyC]", fired.toString());
+		runner.markPlaceBatched("C", "Default", 1);
+		runner.stepFastForwardPetriNet(100);
+		assertEquals("[emptyC, emptyC]", fired.toString());
+		try {
+			runner.markPlace("Missing", "Default", 1);
+			fail("marked an unknown place");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	public void testDisabledTransitionIsNotDue() throws Exception {
+		CompiledPetriNetRunner runner = buildRunner();
+		runner.stepFastForwardPetriNet(100);
+		// The token is taken away before aToB is due.
+		runner.markPlace("A", "Default", 0);
+		assertEquals(-1, runner.getNextFiringTime());
+		runner.stepFastForwardPetriNet(1000);
+		assertTrue(fired.isEmpty());
+		// Enabled again: the delay starts anew.
+		runner.markPlace("A", "Default", 1);
+		assertEquals(1400, runner.getNextFiringTime());
+	}
+}
@@ -0,0 +1,83 @@
+package pipe_project;
+
+import junit.framework.TestCase;
+
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+
+/**
+ * Enabledness and firing of the compiled nets.
+ */
+public class CompiledPetriNetTest extends TestCase {
+
+	private final StringBuilder fired = new StringBuilder();
+
+	private ExternalActionInterface log(String name) {
+		return () -> fired.append(name).append(' ');
+	}
+
+	public void testInputAndInhibitorArcs() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		builder.addPlace("In", 1);
+		builder.addPlace("Out", 0);
+		builder.addPlace("Block", 0);
+		int move = builder.addTransition("move", false, 0, 1, log("move"));
+		builder.addInputArc("In", move, 1);
+		builder.addOutputArc(move, "Out", 1);
+		builder.addInhibitorArc("Block", move);
+		CompiledPetriNet net = builder.build();
+
+		assertTrue(net.isEnabled(move));
+		net.setTokens(net.getPlaceIndex("Block"), 1);
+		assertFalse(net.isEnabled(move));
+		net.setTokens(net.getPlaceIndex("Block"), 0);
+		net.fire(move);
+		assertEquals("move ", fired.toString());
+		assertEquals(0, net.getTokens(net.getPlaceIndex("In")));
+		assertEquals(1, net.getTokens(net.getPlaceIndex("Out")));
+		assertFalse(net.isEnabled(move));
+	}
+
+	public void testArcWeightsAreCompared() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		builder.addPlace("In", 1);
+		builder.addPlace("Out", 0);
+		int take = builder.addTransition("take", false, 0, 1, null);
+		builder.addInputArc("In", take, 3);
+		builder.addOutputArc(take, "Out", 2);
+		CompiledPetriNet net = builder.build();
+
+		// Marked, but less tokens than the weight of the arc.
+		assertFalse(net.isEnabled(take));
+		net.setTokens(net.getPlaceIndex("In"), 3);
+		assertTrue(net.isEnabled(take));
+		net.fire(take);
+		assertEquals(0, net.getTokens(net.getPlaceIndex("In")));
+		assertEquals(2, net.getTokens(net.getPlaceIndex("Out")));
+	}
+
+	public void testMarkingHashFollowsTheMarking() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		// More places than one word of the bit set of the marked places.
+		for (int p = 0; p < 100; p++) {
+			builder.addPlace("P" + p, p % 3);
+		}
+		CompiledPetriNet net = builder.build();
+		net.setTokens(70, 5);
+		net.setTokens(1, 0);
+		int expected = 0;
+		for (int p = 0; p < net.getNumberOfPlaces(); p++) {
+			expected += net.getTokens(p) * CompiledPetriNet.markingHashFactor(net.getPlaceId(p));
+		}
+		assertEquals(expected, net.getMarkingHash());
+	}
+
+	public void testUnknownPlaceIsRejected() {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		int t = builder.addTransition("t", false, 0, 1, null);
+		try {
+			builder.addInputArc("Missing", t, 1);
+			fail("arc from an unknown place");
+		} catch (PetriNetComponentException expected) {
+		}
+	}
+}
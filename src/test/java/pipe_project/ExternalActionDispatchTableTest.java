@@ -0,0 +1,78 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+/**
+ * The dispatch table of a net is built once and reached by all copies of its transitions.
+ */
+public class ExternalActionDispatchTableTest extends TestCase {
+
+	private final List<String> invoked = new ArrayList<>();
+
+	private DiscreteExternalActionCallTransition transition(String id) {
+		return new DiscreteExternalActionCallTransition(id, id, () -> invoked.add(id));
+	}
+
+	private PetriNet buildNet() {
+		PetriNet net = new PetriNet();
+		net.addTransition(transition("first"));
+		net.addTransition(transition("second"));
+		return net;
+	}
+
+	private static DiscreteExternalActionCallTransition find(PetriNet net, String id) throws Exception {
+		return (DiscreteExternalActionCallTransition) net.getComponent(id, Transition.class);
+	}
+
+	public void testTableIsBuiltOncePerNet() throws Exception {
+		PetriNet net = buildNet();
+		ExternalActionDispatchTable table = ExternalActionDispatchTable.build(net);
+		assertEquals(2, table.size());
+		assertSame(table, ExternalActionDispatchTable.build(net));
+	}
+
+	public void testReplacedActionReachesEarlierCopies() throws Exception {
+		PetriNet net = buildNet();
+		ExternalActionDispatchTable.build(net);
+		DiscreteExternalActionCallTransition original = find(net, "second");
+		// Copy of the transition as made for a runner, then a second runner loads the net.
+		DiscreteExternalActionCallTransition copy = new DiscreteExternalActionCallTransition(original);
+		ExternalActionDispatchTable.build(net);
+		original.setExternalAction(() -> invoked.add("replaced"));
+		copy.getDispatchTable().invoke(copy.getDispatchIndex());
+		assertEquals("[replaced]", invoked.toString());
+	}
+
+	public void testCompiledNetInvokesReplacedAction() throws Exception {
+		PetriNet net = buildNet();
+		CompiledPetriNet compiled = CompiledPetriNet.compile(net);
+		find(net, "first").setExternalAction(() -> invoked.add("replaced"));
+		assertEquals("first", compiled.getTransitionId(0));
+		compiled.fire(0);
+		assertEquals("[replaced]", invoked.toString());
+	}
+
+	public void testChangedNetGetsANewTable() throws Exception {
+		PetriNet net = buildNet();
+		ExternalActionDispatchTable table = ExternalActionDispatchTable.build(net);
+		net.addTransition(transition("third"));
+		ExternalActionDispatchTable rebuilt = ExternalActionDispatchTable.build(net);
+		assertNotSame(table, rebuilt);
+		assertEquals(3, rebuilt.size());
+	}
+
+	public void testUnboundTransitionHasATableOfItsOwn() {
+		DiscreteExternalActionCallTransition single = transition("single");
+		ExternalActionDispatchTable table = single.getDispatchTable();
+		assertEquals(1, table.size());
+		single.setExternalAction(() -> invoked.add("replaced"));
+		table.invoke(single.getDispatchIndex());
+		assertEquals("[replaced]", invoked.toString());
+	}
+}
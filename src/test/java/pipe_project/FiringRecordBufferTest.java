@@ -0,0 +1,92 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class FiringRecordBufferTest extends TestCase {
+
+	public void testRecordsComeOutInOrder() {
+		FiringRecordBuffer buffer = new FiringRecordBuffer(8);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(buffer.publish(i, 100 * i, 1000 * i, -i));
+		}
+		List<String> records = new ArrayList<>();
+		assertEquals(5, buffer.drain((t, pnTime, realTime, hash) ->
+				records.add(t + ":" + pnTime + ":" + realTime + ":" + hash)));
+		assertEquals("[0:0:0:0, 1:100:1000:-1, 2:200:2000:-2, 3:300:3000:-3, 4:400:4000:-4]",
+				records.toString());
+		assertEquals(0, buffer.drain((t, pnTime, realTime, hash) -> fail("drained twice")));
+	}
+
+	public void testFullBufferDropsRecords() {
+		FiringRecordBuffer buffer = new FiringRecordBuffer(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.publish(i, 0, 0, 0));
+		}
+		assertFalse(buffer.publish(4, 0, 0, 0));
+		assertEquals(1, buffer.getDroppedRecords());
+		// Draining frees the slots again (the ring wraps around).
+		assertEquals(4, buffer.drain((t, pnTime, realTime, hash) -> { }));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.publish(10 + i, 0, 0, 0));
+		}
+		List<Integer> transitions = new ArrayList<>();
+		buffer.drain((t, pnTime, realTime, hash) -> transitions.add(t));
+		assertEquals("[10, 11, 12, 13]", transitions.toString());
+	}
+
+	/*
+	 * Several producers and one consumer running at the same time: every record
+	 * arrives complete and exactly once (or is counted as dropped), and the records
+	 * of each producer arrive in the order they were published.
+	 */
+	public void testConcurrentProducers() throws Exception {
+		final int producers = 4;
+		final int records = 200000;
+		final FiringRecordBuffer buffer = new FiringRecordBuffer(1024);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (long i = 0; i < records; i++) {
+					buffer.publish(producer, i, 3 * i, (int) i ^ producer);
+				}
+			});
+			threads[p].start();
+		}
+		final long[] last = new long[producers];
+		final long[] received = new long[1];
+		final String[] error = new String[1];
+		Arrays.fill(last, -1);
+		FiringRecordBuffer.RecordHandler check = (producer, pnTime, realTime, hash) -> {
+			if (realTime != 3 * pnTime || hash != ((int) pnTime ^ producer) || pnTime <= last[producer]) {
+				error[0] = "broken record " + producer + " " + pnTime + " " + realTime + " " + hash;
+			}
+			last[producer] = pnTime;
+			received[0]++;
+		};
+		start.countDown();
+		boolean alive = true;
+		while (alive) {
+			alive = false;
+			for (Thread thread : threads) {
+				alive |= thread.isAlive();
+			}
+			buffer.drain(check);
+		}
+		buffer.drain(check);
+		assertNull(error[0], error[0]);
+		assertEquals((long) producers * records, received[0] + buffer.getDroppedRecords());
+		assertTrue(received[0] > 0);
+	}
+}
@@ -0,0 +1,95 @@
+package pipe_project;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+/**
+ * Recording a trace of firings and reading it back.
+ */
+public class FiringTraceRecorderTest extends TestCase {
+
+	private File trace;
+
+	@Override
+	protected void setUp() throws IOException {
+		trace = File.createTempFile("firings", ".trace");
+	}
+
+	@Override
+	protected void tearDown() {
+		new File(FiringTraceReader.namesFile(trace.getPath())).delete();
+		trace.delete();
+	}
+
+	public void testRoundTrip() throws IOException {
+		FiringTraceRecorder recorder = new FiringTraceRecorder(trace.getPath());
+		assertTrue(recorder.needsMarkingHash());
+		recorder.onFiring(0, "turnGreen", 100, 1000, 42);
+		recorder.onFiring(1, "turnRed", 200, 2000, -7);
+		recorder.onFiring(0, "turnGreen", 300, 3000, 42);
+		recorder.close();
+		// The file is cut to the records written.
+		assertEquals(FiringTraceReader.HEADER_SIZE + 3 * FiringTraceReader.RECORD_SIZE, trace.length());
+
+		try (FiringTraceReader reader = new FiringTraceReader(trace.getPath())) {
+			assertEquals(3, reader.getNumberOfRecords());
+			assertEquals("turnRed", reader.getTransitionName(1));
+			Iterator<FiringTraceReader.Record> records = reader.iterator();
+			FiringTraceReader.Record first = records.next();
+			assertEquals(0, first.transition);
+			assertEquals("turnGreen", first.transitionName);
+			assertEquals(100, first.pnTime);
+			assertEquals(1000, first.realTime);
+			assertEquals(42, first.markingHash);
+			FiringTraceReader.Record second = records.next();
+			assertEquals("turnRed", second.transitionName);
+			assertEquals(-7, second.markingHash);
+			assertEquals(300, records.next().pnTime);
+			assertFalse(records.hasNext());
+		}
+	}
+
+	public void testTraceSpanningSeveralRegions() throws IOException {
+		int firings = 150000;
+		try (FiringTraceRecorder recorder = new FiringTraceRecorder(trace.getPath())) {
+			for (int i = 0; i < firings; i++) {
+				recorder.onFiring(i % 3, "t" + (i % 3), i, 2L * i, i);
+			}
+		}
+		try (FiringTraceReader reader = new FiringTraceReader(trace.getPath())) {
+			assertEquals(firings, reader.getNumberOfRecords());
+			long i = 0;
+			for (FiringTraceReader.Record record : reader) {
+				assertEquals(i, record.pnTime);
+				assertEquals(2 * i, record.realTime);
+				assertEquals("t" + (i % 3), record.transitionName);
+				i++;
+			}
+			assertEquals(firings, i);
+		}
+	}
+
+	public void testUnclosedTraceCanBeRead() throws IOException {
+		FiringTraceRecorder recorder = new FiringTraceRecorder(trace.getPath());
+		recorder.onFiring(5, "t5", 10, 20, 30);
+		recorder.flush();
+		try (FiringTraceReader reader = new FiringTraceReader(trace.getPath())) {
+			assertEquals(1, reader.getNumberOfRecords());
+			assertEquals("t5", reader.iterator().next().transitionName);
+		}
+		recorder.close();
+	}
+
+	public void testPipelineAsksForMarkingHashOnlyForTraces() throws IOException {
+		FiringEventPipeline pipeline = new FiringEventPipeline(16);
+		pipeline.addConsumer(new FiringStatistics());
+		assertFalse(pipeline.needsMarkingHash());
+		try (FiringTraceRecorder recorder = new FiringTraceRecorder(trace.getPath())) {
+			pipeline.addConsumer(recorder);
+			assertTrue(pipeline.needsMarkingHash());
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import traffic_sim.SimulationWorld;
+import traffic_sim.TrafficLight;
+import uk.ac.imperial.pipe.models.petrinet.*;
+
+/**
+ * Controller nets of intersections built from the IntersectionTemplate: stable ids
+ * and the phase cycle wired as in the hand-wired net of MainPN before the template.
+ */
+public class IntersectionTemplateTest extends TestCase {
+
+	private static final String TOKEN = IntersectionTemplate.TOKEN;
+
+	@Override
+	protected void setUp() {
+		new SimulationWorld(1).makeCurrent();
+	}
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	private static TrafficLight[] lights(int n) {
+		TrafficLight[] lights = new TrafficLight[n];
+		for (int i = 0; i < n; i++) {
+			lights[i] = new TrafficLight();
+		}
+		return lights;
+	}
+
+	/*
+	 * Intersection "Main" with two approaches and a grid with a single
+	 * intersection of three approaches in row 0, column 1.
+	 */
+	private static IntersectionControllerBuilder builder() {
+		TrafficLight[][][] grid = new TrafficLight[][][] {{null, lights(3)}};
+		return new IntersectionControllerBuilder(new IntersectionTemplate(5000, 500, 1000, 500))
+				.addIntersection("Main", lights(2))
+				.addGrid(grid);
+	}
+
+	private static List<String> targets(PetriNet net, String transitionId) throws Exception {
+		List<String> ids = new ArrayList<>();
+		for (OutboundArc arc : net.getOutboundArcs(net.getComponent(transitionId, Transition.class))) {
+			ids.add(arc.getTarget().getId());
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static List<String> sources(PetriNet net, String transitionId, boolean inhibitors) throws Exception {
+		List<String> ids = new ArrayList<>();
+		for (InboundArc arc : net.getInboundArcs(net.getComponent(transitionId, Transition.class))) {
+			if ((arc instanceof InboundInhibitorArc) == inhibitors) {
+				ids.add(arc.getSource().getId());
+			}
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static int tokens(PetriNet net, String placeId) throws Exception {
+		return net.getComponent(placeId, Place.class).getTokenCount(TOKEN);
+	}
+
+	public void testIdsAreStable() throws Exception {
+		IntersectionControllerBuilder builder = builder();
+		builder.build();
+		List<IntersectionTemplate.Instance> instances = builder.getIntersections();
+		assertEquals(2, instances.size());
+		IntersectionTemplate.Instance main = instances.get(0);
+		assertEquals("Main", main.getId());
+		assertEquals(Arrays.asList("Main_isPhase0", "Main_isPhase1",
+				"Main_Green0", "Main_Yellow0", "Main_Red0", "Main_Green1", "Main_Yellow1", "Main_Red1"),
+				main.getPlaceIds());
+		assertEquals(Arrays.asList("Main_turnPhase0", "Main_turnPhase1",
+				"Main_turnRed0", "Main_turnYellow0", "Main_turnGreen0",
+				"Main_turnRed1", "Main_turnYellow1", "Main_turnGreen1"),
+				main.getTransitionIds());
+		assertEquals("R0C1", instances.get(1).getId());
+		assertTrue(instances.get(1).getTransitionIds().contains("R0C1_turnGreen2"));
+
+		// Another builder with other lights generates the same ids.
+		IntersectionControllerBuilder other = builder();
+		other.build();
+		for (int i = 0; i < instances.size(); i++) {
+			assertEquals(instances.get(i).getPlaceIds(), other.getIntersections().get(i).getPlaceIds());
+			assertEquals(instances.get(i).getTransitionIds(), other.getIntersections().get(i).getTransitionIds());
+		}
+	}
+
+	public void testOnePhasePerApproachAndTheFirstOneStarts() throws Exception {
+		IntersectionControllerBuilder builder = builder();
+		PetriNet net = builder.build();
+		for (IntersectionTemplate.Instance instance : builder.getIntersections()) {
+			int approaches = 0;
+			for (String placeId : instance.getPlaceIds()) {
+				if (placeId.startsWith(instance.getId() + "_isPhase")) {
+					approaches++;
+				}
+			}
+			assertEquals(instance.getId().equals("Main") ? 2 : 3, approaches);
+			for (int i = 0; i < approaches; i++) {
+				String isPhase = IntersectionTemplate.elementId(instance.getId(), "isPhase", i);
+				assertEquals(isPhase, (i == 0) ? 1 : 0, tokens(net, isPhase));
+				assertEquals(1, tokens(net, IntersectionTemplate.elementId(instance.getId(), "Red", i)));
+				assertEquals(0, tokens(net, IntersectionTemplate.elementId(instance.getId(), "Green", i)));
+			}
+		}
+	}
+
+	public void testPhasesAreWiredAsTheBaseline() throws Exception {
+		IntersectionControllerBuilder builder = builder();
+		PetriNet net = builder.build();
+		for (IntersectionTemplate.Instance instance : builder.getIntersections()) {
+			String id = instance.getId();
+			int approaches = id.equals("Main") ? 2 : 3;
+			for (int i = 0; i < approaches; i++) {
+				String green = IntersectionTemplate.elementId(id, "Green", i);
+				String yellow = IntersectionTemplate.elementId(id, "Yellow", i);
+				String red = IntersectionTemplate.elementId(id, "Red", i);
+				String turnRed = IntersectionTemplate.elementId(id, "turnRed", i);
+				String turnPhase = IntersectionTemplate.elementId(id, "turnPhase", i);
+				String nextPhase = IntersectionTemplate.elementId(id, "isPhase", (i + 1) % approaches);
+				// Turning red starts the phase of the next approach.
+				assertEquals(sorted(red, nextPhase), targets(net, turnRed));
+				assertEquals(Arrays.asList(yellow), sources(net, turnRed, false));
+				assertEquals(Arrays.asList(red), sources(net, turnRed, true));
+				assertEquals(Arrays.asList(IntersectionTemplate.elementId(id, "isPhase", i)),
+						sources(net, turnPhase, false));
+				assertEquals(Arrays.asList(yellow), targets(net, turnPhase));
+				assertEquals(Arrays.asList(green), sources(net, IntersectionTemplate.elementId(id, "turnYellow", i), false));
+				assertEquals(Arrays.asList(yellow), targets(net, IntersectionTemplate.elementId(id, "turnYellow", i)));
+				assertEquals(sorted(red, yellow), sources(net, IntersectionTemplate.elementId(id, "turnGreen", i), false));
+				assertEquals(Arrays.asList(green), targets(net, IntersectionTemplate.elementId(id, "turnGreen", i)));
+			}
+		}
+	}
+
+	public void testInvalidIntersections() {
+		IntersectionControllerBuilder builder = builder();
+		try {
+			builder.addIntersection("Main", lights(2));
+			fail("same id twice");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			builder.addIntersection("Main_2", lights(2));
+			fail("underscore in the id");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static List<String> sorted(String... ids) {
+		List<String> list = new ArrayList<>(Arrays.asList(ids));
+		Collections.sort(list);
+		return list;
+	}
+}
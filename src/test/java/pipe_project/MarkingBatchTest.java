@@ -0,0 +1,39 @@
+package pipe_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MarkingBatchTest extends TestCase {
+
+	public void testLastMarkingOfAPlaceWins() {
+		MarkingBatch batch = new MarkingBatch();
+		assertTrue(batch.isEmpty());
+		batch.add("P0", "Default", 1);
+		batch.add("P1", "Default", 2);
+		batch.add("P0", "Default", 3);
+		List<String> applied = new ArrayList<>();
+		assertTrue(batch.applyTo((place, token, count) -> applied.add(place + "=" + count)));
+		assertEquals("[P0=3, P1=2]", applied.toString());
+		assertTrue(batch.isEmpty());
+		assertFalse(batch.applyTo((place, token, count) -> fail("empty batch applied")));
+	}
+
+	public void testRejectedMarkingEmptiesTheBatch() {
+		MarkingBatch batch = new MarkingBatch();
+		batch.add("Unknown", "Default", 1);
+		try {
+			batch.applyTo((place, token, count) -> {
+				throw new IllegalArgumentException("Unknown place " + place);
+			});
+			fail("marking of an unknown place applied");
+		} catch (IllegalArgumentException expected) {
+		}
+		// The rejected marking is not applied again with the next batch.
+		batch.add("P0", "Default", 1);
+		List<String> applied = new ArrayList<>();
+		batch.applyTo((place, token, count) -> applied.add(place));
+		assertEquals("[P0]", applied.toString());
+	}
+}
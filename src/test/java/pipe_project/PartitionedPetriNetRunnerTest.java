@@ -0,0 +1,137 @@
+package pipe_project;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+
+/**
+ * Partitioned nets run like a single net and interface places add up the changes of the partitions.
+ */
+public class PartitionedPetriNetRunnerTest extends TestCase {
+
+	private static final int RINGS = 20;
+
+	private ForkJoinPool pool;
+
+	@Override
+	protected void setUp() {
+		pool = new ForkJoinPool(2);
+	}
+
+	@Override
+	protected void tearDown() {
+		pool.shutdown();
+	}
+
+	/*
+	 * Independent rings A -> B -> A with different delays, the transitions
+	 * from A to B are inhibited while C of the ring is marked.
+	 */
+	private static CompiledPetriNet rings() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		for (int i = 0; i < RINGS; i++) {
+			builder.addPlace("A" + i, 1);
+			builder.addPlace("B" + i, 0);
+			builder.addPlace("C" + i, 0);
+			int aToB = builder.addTransition("aToB" + i, true, 100 + 7 * i, 1, () -> { });
+			int bToA = builder.addTransition("bToA" + i, true, 300, 1, () -> { });
+			builder.addInputArc("A" + i, aToB, 1);
+			builder.addOutputArc(aToB, "B" + i, 1);
+			builder.addInputArc("B" + i, bToA, 1);
+			builder.addOutputArc(bToA, "A" + i, 1);
+			builder.addInhibitorArc("C" + i, aToB);
+		}
+		return builder.build();
+	}
+
+	/*
+	 * Two producers putting a token into SYNC every 100 ms and an immediate
+	 * transition moving the tokens from SYNC to DONE.
+	 */
+	private static CompiledPetriNet producersAndConsumer() throws Exception {
+		CompiledPetriNet.Builder builder = new CompiledPetriNet.Builder();
+		builder.addPlace("SYNC", 0);
+		builder.addPlace("DONE", 0);
+		for (int i = 0; i < 2; i++) {
+			builder.addPlace("P" + i, 1);
+			int produce = builder.addTransition("produce" + i, true, 100, 1, () -> { });
+			builder.addInputArc("P" + i, produce, 1);
+			builder.addOutputArc(produce, "P" + i, 1);
+			builder.addOutputArc(produce, "SYNC", 1);
+		}
+		int consume = builder.addTransition("consume", false, 0, 1, () -> { });
+		builder.addInputArc("SYNC", consume, 1);
+		builder.addOutputArc(consume, "DONE", 1);
+		return builder.build();
+	}
+
+	public void testIndependentSubnetsRunLikeASingleNet() throws Exception {
+		CompiledPetriNetRunner single = new CompiledPetriNetRunner(rings());
+		PartitionedPetriNetRunner partitioned = new PartitionedPetriNetRunner(rings(),
+				Collections.<String>emptyList(), pool, 4);
+		assertEquals(4, partitioned.getNumberOfPartitions());
+		assertTrue(partitioned.getInterfacePlaces().isEmpty());
+		CompiledPetriNet net = single.getNet();
+		for (int step = 0; step < 500; step++) {
+			if (step == 100) {
+				single.markPlace("C3", "Default", 1);
+				partitioned.markPlaceBatched("C3", "Default", 1);
+			}
+			single.stepFastForwardPetriNet(50);
+			partitioned.stepFastForwardPetriNet(50);
+			for (int p = 0; p < net.getNumberOfPlaces(); p++) {
+				String id = net.getPlaceId(p);
+				assertEquals(id + " in step " + step, net.getTokens(p), partitioned.getTokens(id));
+			}
+		}
+		assertEquals(single.getPNTimeSinceStart(), partitioned.getPNTimeSinceStart());
+	}
+
+	public void testInterfacePlaceAddsUpTheChanges() throws Exception {
+		PartitionedPetriNetRunner runner = new PartitionedPetriNetRunner(producersAndConsumer(),
+				Arrays.asList("SYNC"), pool, 4);
+		assertEquals(3, runner.getNumberOfPartitions());
+		assertEquals(Arrays.asList("SYNC"), runner.getInterfacePlaces());
+		// Both producers fire - the consumer sees their tokens from the next step on.
+		runner.stepFastForwardPetriNet(100);
+		assertEquals(2, runner.getTokens("SYNC"));
+		assertEquals(0, runner.getTokens("DONE"));
+		runner.stepFastForwardPetriNet(50);
+		assertEquals(0, runner.getTokens("SYNC"));
+		assertEquals(2, runner.getTokens("DONE"));
+		// Produced and consumed in the same step.
+		runner.stepFastForwardPetriNet(50);
+		assertEquals(2, runner.getTokens("SYNC"));
+		runner.stepFastForwardPetriNet(100);
+		assertEquals(2, runner.getTokens("SYNC"));
+		assertEquals(4, runner.getTokens("DONE"));
+	}
+
+	public void testMarkedInterfacePlaceReachesAllPartitions() throws Exception {
+		PartitionedPetriNetRunner runner = new PartitionedPetriNetRunner(producersAndConsumer(),
+				Arrays.asList("SYNC"), pool, 4);
+		runner.markPlace("SYNC", "Default", 3);
+		assertEquals(3, runner.getTokens("SYNC"));
+		runner.stepFastForwardPetriNet(50);
+		assertEquals(0, runner.getTokens("SYNC"));
+		assertEquals(3, runner.getTokens("DONE"));
+		try {
+			runner.markPlace("Missing", "Default", 1);
+			fail("marked an unknown place");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testUnknownInterfacePlace() throws Exception {
+		try {
+			new PartitionedPetriNetRunner(producersAndConsumer(), Arrays.asList("Missing"), pool, 4);
+			fail("unknown interface place");
+		} catch (PetriNetComponentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package pipe_project;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class TransitionHeapTest extends TestCase {
+
+	public void testOrderedByKeyAndIndex() {
+		TransitionHeap heap = new TransitionHeap(4);
+		assertTrue(heap.isEmpty());
+		assertEquals(-1, heap.peek());
+		heap.add(3, 10);
+		heap.add(1, 10);
+		heap.add(2, 5);
+		assertEquals(2, heap.peek());
+		assertEquals(5, heap.peekKey());
+		heap.remove(2);
+		// Same key: the lower index first.
+		assertEquals(1, heap.peek());
+		// Adding again moves the transition.
+		heap.add(1, 20);
+		assertEquals(3, heap.peek());
+		assertTrue(heap.contains(1));
+		heap.remove(3);
+		heap.remove(3);
+		heap.remove(1);
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(1));
+	}
+
+	public void testRandomOperationsMatchSortedSet() {
+		int transitions = 50;
+		TransitionHeap heap = new TransitionHeap(transitions);
+		long[] keys = new long[transitions];
+		// Reference: key and transition packed into one sortable value.
+		TreeSet<Long> reference = new TreeSet<>();
+		Random random = new Random(3);
+		for (int i = 0; i < 10000; i++) {
+			int t = random.nextInt(transitions);
+			if (random.nextInt(3) == 0) {
+				heap.remove(t);
+				reference.remove(keys[t] * transitions + t);
+			} else {
+				reference.remove(keys[t] * transitions + t);
+				keys[t] = random.nextInt(100);
+				heap.add(t, keys[t]);
+				reference.add(keys[t] * transitions + t);
+			}
+			if (reference.isEmpty()) {
+				assertTrue(heap.isEmpty());
+			} else {
+				long first = reference.first();
+				assertEquals(first % transitions, heap.peek());
+				assertEquals(first / transitions, heap.peekKey());
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package traffic_sim;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Sampling of arrivals from an ArrivalProfile and profiles of the producers.
+ */
+public class ArrivalProfileTest extends TestCase {
+
+	private static final int SAMPLES = 20000;
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	public void testConstantRate() {
+		ArrivalProfile profile = ArrivalProfile.constant(2.);
+		Random random = new Random(1);
+		double time = 0.;
+		for (int i = 0; i < SAMPLES; i++) {
+			double next = profile.nextArrivalTime(time, random);
+			assertTrue(next > time);
+			time = next;
+		}
+		assertEquals(0.5, time / SAMPLES, 0.02);
+	}
+
+	public void testNoArrivalsWithoutDemand() {
+		Random random = new Random(1);
+		assertEquals(Double.POSITIVE_INFINITY, ArrivalProfile.constant(0.).nextArrivalTime(10., random));
+		ArrivalProfile periodic = new ArrivalProfile(new double[] {0., 50.}, new double[] {0., 0.}, 100.);
+		assertEquals(Double.POSITIVE_INFINITY, periodic.nextArrivalTime(10., random));
+		ArrivalProfile ending = new ArrivalProfile(new double[] {0., 50.}, new double[] {1., 0.},
+				Double.POSITIVE_INFINITY);
+		assertEquals(Double.POSITIVE_INFINITY, ending.nextArrivalTime(60., random));
+	}
+
+	public void testArrivalsOnlyInSegmentsWithDemand() {
+		// Vehicles arrive only from 100 to 200 in each period of 300 s.
+		ArrivalProfile profile = new ArrivalProfile(new double[] {0., 100., 200.},
+				new double[] {0., 0.01, 0.}, 300.);
+		Random random = new Random(2);
+		double time = 0.;
+		for (int i = 0; i < SAMPLES; i++) {
+			double next = profile.nextArrivalTime(time, random);
+			assertTrue(next > time);
+			double inPeriod = next % 300.;
+			assertTrue("arrival at " + next, inPeriod >= 100. && inPeriod <= 200.);
+			time = next;
+		}
+		// One vehicle per period on average (periods without an arrival are skipped).
+		assertEquals(300., time / SAMPLES, 15.);
+	}
+
+	public void testRateOfTheSegment() {
+		ArrivalProfile profile = new ArrivalProfile(new double[] {0., 100., 200.},
+				new double[] {0.1, 0.5, 0.2}, 300.);
+		assertEquals(0.1, profile.getRate(0.), 0.);
+		assertEquals(0.5, profile.getRate(100.), 0.);
+		assertEquals(0.2, profile.getRate(299.), 0.);
+		assertEquals(0.1, profile.getRate(300.), 0.);
+		assertEquals(0.5, profile.getRate(750.), 0.);
+	}
+
+	public void testInvalidProfiles() {
+		try {
+			new ArrivalProfile(new double[] {10.}, new double[] {1.}, 100.);
+			fail("profile not starting at 0");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new ArrivalProfile(new double[] {0., 50.}, new double[] {1., 1.}, 50.);
+			fail("period before the last start time");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testWorldProfileDoesNotDisturbOwnProfiles() {
+		TestScene changed = new TestScene(9);
+		TestScene unchanged = new TestScene(9);
+		for (TestScene scene : Arrays.asList(changed, unchanged)) {
+			for (VehicleProducer producer : scene.producers) {
+				producer.setArrivalProfile(ArrivalProfile.constant(0.2));
+			}
+			scene.run(HeadlessSimulation.UpdateMode.SERIAL, 5);
+		}
+		changed.world.setArrivalProfile(ArrivalProfile.constant(0.5));
+		changed.run(HeadlessSimulation.UpdateMode.SERIAL, 5);
+		unchanged.run(HeadlessSimulation.UpdateMode.SERIAL, 5);
+		assertEquals(unchanged.fingerprint(), changed.fingerprint());
+	}
+
+	public void testProducerKeepsItsProfile() {
+		SimulationWorld world = new SimulationWorld(1);
+		world.makeCurrent();
+		VehicleProducer own = new VehicleProducer(0, 0);
+		VehicleProducer shared = new VehicleProducer(0, 100);
+		ArrivalProfile ownProfile = ArrivalProfile.constant(0.1);
+		ArrivalProfile worldProfile = ArrivalProfile.constant(0.2);
+		own.setArrivalProfile(ownProfile);
+		world.setArrivalProfile(worldProfile);
+		assertSame(ownProfile, own.getArrivalProfile());
+		assertSame(worldProfile, shared.getArrivalProfile());
+		world.setArrivalProfile(null);
+		assertSame(ownProfile, own.getArrivalProfile());
+		assertNull(shared.getArrivalProfile());
+	}
+}
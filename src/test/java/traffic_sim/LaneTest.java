@@ -0,0 +1,113 @@
+package traffic_sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * The ordered storage of the cars of a lane (ring buffer by sequence number).
+ */
+public class LaneTest extends TestCase {
+
+	private Lane lane;
+
+	@Override
+	protected void setUp() {
+		new SimulationWorld(1).makeCurrent();
+		lane = new Lane("Lane", new VehicleProducer(0, 0), new VehicleConsumer(1000, 0));
+	}
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	/*
+	 * A car entering the lane behind all others.
+	 */
+	private Vehicle enter(String name, double position) {
+		Vehicle vehicle = new Vehicle(name, lane);
+		vehicle.setPositionInLane(position);
+		return vehicle;
+	}
+
+	private List<Vehicle> vehiclesOnLane() {
+		return new ArrayList<>(lane.getVehiclesOnLane());
+	}
+
+	public void testCarsAreOrderedByEntry() {
+		Vehicle first = enter("first", 30);
+		Vehicle second = enter("second", 20);
+		Vehicle third = enter("third", 10);
+		assertEquals(3, lane.getVehiclesOnLane().size());
+		assertEquals("[first, second, third]", names(vehiclesOnLane()));
+		assertNull(lane.getVehicleInFront(first));
+		assertSame(first, lane.getVehicleInFront(second));
+		assertSame(third, lane.getVehicleBehind(second));
+		assertNull(lane.getVehicleBehind(third));
+		assertEquals(2, lane.getVehicleNumberInFront(third));
+	}
+
+	public void testRemovingClosesTheGap() {
+		Vehicle first = enter("first", 40);
+		Vehicle second = enter("second", 30);
+		Vehicle third = enter("third", 20);
+		Vehicle fourth = enter("fourth", 10);
+		// A car in the middle (e.g. switching into a building).
+		second.removeVehicleFromLane();
+		assertEquals("[first, third, fourth]", names(vehiclesOnLane()));
+		assertSame(first, lane.getVehicleInFront(third));
+		assertEquals(1, lane.getVehicleNumberInFront(third));
+		// The first car leaves at the end of the lane.
+		first.removeVehicleFromLane();
+		assertEquals("[third, fourth]", names(vehiclesOnLane()));
+		assertNull(lane.getVehicleInFront(third));
+		assertSame(third, lane.getVehicleInFront(fourth));
+		assertTrue(lane.getVehiclesOnLane().contains(fourth));
+		assertFalse(lane.getVehiclesOnLane().contains(first));
+	}
+
+	public void testBufferGrowsAndWrapsAround() {
+		List<Vehicle> expected = new ArrayList<>();
+		double position = 1000;
+		// More cars than the initial capacity, leaving at the head in between,
+		// so the sequence numbers wrap around the buffer several times.
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 20; i++) {
+				expected.add(enter("car" + round + "_" + i, position -= 1));
+			}
+			for (int i = 0; i < 15; i++) {
+				expected.remove(0).removeVehicleFromLane();
+			}
+			assertEquals(names(expected), names(vehiclesOnLane()));
+		}
+		assertEquals(25, lane.getVehiclesOnLane().size());
+		for (int i = 1; i < expected.size(); i++) {
+			assertSame(expected.get(i - 1), lane.getVehicleInFront(expected.get(i)));
+			assertEquals(i, lane.getVehicleNumberInFront(expected.get(i)));
+		}
+	}
+
+	private static String names(List<Vehicle> vehicles) {
+		List<String> names = new ArrayList<>();
+		for (Vehicle vehicle : vehicles) {
+			names.add(vehicle.getName());
+		}
+		return names.toString();
+	}
+
+	public void testSampleWindowFindsCarsInRange() {
+		for (int i = 0; i < 10; i++) {
+			enter("car" + i, 100 - 10 * i);
+		}
+		LaneSensor.Sample sample = new LaneSensor.Sample();
+		lane.sampleWindow(35, 70, sample);
+		assertEquals(4, sample.size());
+		assertEquals(70., sample.getPosition(0), 0.);
+		assertEquals(40., sample.getPosition(3), 0.);
+		assertEquals("car3", sample.getVehicle(0).getName());
+		lane.sampleWindow(101, 200, sample);
+		assertEquals(0, sample.size());
+	}
+}
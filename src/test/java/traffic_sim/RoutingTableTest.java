@@ -0,0 +1,91 @@
+package traffic_sim;
+
+import java.awt.Point;
+
+import junit.framework.TestCase;
+
+/**
+ * Shortest ways through the lanes to a consumer and rebuilding the tables
+ * when the road network changes.
+ */
+public class RoutingTableTest extends TestCase {
+
+	private SimulationWorld world;
+	private RoutingTable routing;
+	private LaneExtension split;
+	private VehicleConsumer target, elsewhere;
+	private Lane incoming, short1, short2, long1, long2, other;
+
+	/*
+	 * From the split two ways lead to the target: a short one over (200, 50)
+	 * and a long one over (100, 200). The other consumer is only reached by
+	 * a lane of its own.
+	 */
+	@Override
+	protected void setUp() {
+		world = new SimulationWorld(3);
+		world.makeCurrent();
+		routing = world.getRoutingTable();
+		split = new LaneExtension(100, 0);
+		LaneExtension shortWay = new LaneExtension(200, 50);
+		LaneExtension longWay = new LaneExtension(100, 200);
+		target = new VehicleConsumer(300, 0);
+		elsewhere = new VehicleConsumer(0, 300);
+		incoming = new Lane("Incoming", new LaneExtension(0, 0), split);
+		short1 = new Lane("Short1", split, shortWay);
+		short2 = new Lane("Short2", shortWay, target);
+		long1 = new Lane("Long1", split, longWay);
+		long2 = new Lane("Long2", longWay, target);
+		other = new Lane("Other", new LaneExtension(0, 200), elsewhere);
+	}
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	public void testShortestWayIsTaken() {
+		assertSame(short1, routing.nextLane(incoming, target));
+		assertSame(short2, routing.nextLane(short1, target));
+		assertSame(long2, routing.nextLane(long1, target));
+		// The lane ends in the target.
+		assertNull(routing.nextLane(short2, target));
+		assertTrue(routing.isReachable(short2, target));
+	}
+
+	public void testUnreachableTarget() {
+		assertFalse(routing.isReachable(incoming, elsewhere));
+		assertNull(routing.nextLane(incoming, elsewhere));
+		assertTrue(routing.isReachable(other, elsewhere));
+		assertFalse(routing.isReachable(other, target));
+	}
+
+	public void testAddedLaneIsUsed() {
+		assertSame(short1, routing.nextLane(incoming, target));
+		// A straight lane from the split to the target is shorter than the short way.
+		Lane direct = new Lane("Direct", split, target);
+		assertSame(direct, routing.nextLane(incoming, target));
+		assertNull(routing.nextLane(direct, target));
+	}
+
+	public void testReconnectedLaneIsUsed() {
+		assertFalse(routing.isReachable(incoming, elsewhere));
+		long2.setEndConnection(elsewhere);
+		assertSame(long1, routing.nextLane(incoming, elsewhere));
+		assertSame(long2, routing.nextLane(long1, elsewhere));
+		// The target is only reached on the short way now.
+		assertFalse(routing.isReachable(long1, target));
+	}
+
+	public void testVehicleFollowsTheRoute() {
+		for (int i = 0; i < 10; i++) {
+			Vehicle vehicle = new Vehicle("car" + i, incoming);
+			vehicle.addDestination(new Destination(new Point(300, 0), 0, target));
+			while (vehicle.getCurrentLane() == incoming) {
+				world.updateAll(0.1);
+			}
+			assertSame(short1, vehicle.getCurrentLane());
+			vehicle.removeVehicleFromLane();
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package traffic_sim;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+public class SceneSnapshotTest extends TestCase {
+
+	private static BufferedImage draw(SceneSnapshot snapshot, double scale, double offset) {
+		BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		snapshot.redraw(g2d, scale, offset, offset);
+		g2d.dispose();
+		return image;
+	}
+
+	public void testVehiclesAreDrawnAtEveryScale() {
+		SceneSnapshot.Builder builder = new SceneSnapshot.Builder();
+		builder.addVehicle(50, 50);
+		SceneSnapshot snapshot = builder.build(1.);
+		assertEquals(1, snapshot.getNumberOfVehicles());
+		// Zooming goes in steps of 1.1 - the scale is never exactly 1 again.
+		for (double scale : new double[] {1., 1.1 * 1.1, 1. / 1.1, 3.}) {
+			BufferedImage image = draw(snapshot, scale, 10.);
+			int center = (int) (50 * scale + 10.);
+			assertEquals("vehicle at scale " + scale, Color.blue.getRGB(), image.getRGB(center, center));
+		}
+	}
+
+	public void testBuilderIsClearedByBuild() {
+		SceneSnapshot.Builder builder = new SceneSnapshot.Builder();
+		for (int i = 0; i < 100; i++) {
+			builder.addVehicle(i, i);
+		}
+		assertEquals(100, builder.build(1.).getNumberOfVehicles());
+		assertEquals(0, builder.build(2.).getNumberOfVehicles());
+	}
+}
@@ -0,0 +1,83 @@
+package traffic_sim;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Recording the random decisions of a run, saving and loading them and replaying them.
+ */
+public class SimulationRecordingTest extends TestCase {
+
+	private static final int PHASES = 20;
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("simulation", ".rec");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+		SimulationWorld.resetCurrent();
+	}
+
+	public void testReplayGivesTheRecordedRun() throws IOException {
+		SimulationWorld recorded = new SimulationWorld(5);
+		SimulationRecording recording = recorded.startRecording();
+		TestScene original = new TestScene(recorded);
+		original.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		assertTrue(recording.getNumberOfArrivals() > 0);
+		assertTrue(recording.getNumberOfLaneChoices() > 0);
+		recording.save(file.getPath());
+
+		SimulationRecording loaded = SimulationRecording.load(file.getPath());
+		assertEquals(5, loaded.getSeed());
+		assertEquals(recording.getNumberOfArrivals(), loaded.getNumberOfArrivals());
+		assertEquals(recording.getNumberOfLaneChoices(), loaded.getNumberOfLaneChoices());
+
+		// The world to replay in has another seed - the recording brings its own.
+		SimulationWorld replayed = new SimulationWorld(6);
+		replayed.replay(loaded);
+		assertEquals(SimulationRecording.Mode.REPLAY, loaded.getMode());
+		TestScene replay = new TestScene(replayed);
+		replay.run(HeadlessSimulation.UpdateMode.EVENT_DRIVEN, PHASES);
+		assertEquals(original.fingerprint(), replay.fingerprint());
+	}
+
+	public void testReplayKeepsArrivalsWhenTheDemandChanges() {
+		SimulationWorld recorded = new SimulationWorld(5);
+		SimulationRecording recording = recorded.startRecording();
+		TestScene original = new TestScene(recorded);
+		original.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES / 2);
+		recorded.setArrivalProfile(ArrivalProfile.constant(0.3));
+		original.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES / 2);
+
+		SimulationWorld replayed = new SimulationWorld(6);
+		replayed.replay(recording);
+		TestScene replay = new TestScene(replayed);
+		replay.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES / 2);
+		replayed.setArrivalProfile(ArrivalProfile.constant(0.3));
+		replay.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES / 2);
+		assertEquals(original.fingerprint(), replay.fingerprint());
+	}
+
+	public void testSameSeedGivesTheSameRun() {
+		TestScene first = new TestScene(8);
+		first.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		TestScene second = new TestScene(8);
+		second.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		assertEquals(first.fingerprint(), second.fingerprint());
+	}
+
+	public void testCorruptFileIsRejected() throws IOException {
+		try {
+			SimulationRecording.load(file.getPath());
+			fail("empty file loaded");
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package traffic_sim;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Small crossing used by the tests: two roads with traffic lights, turning lanes
+ * and evaluated consumers. The scene is constructed in its own SimulationWorld,
+ * no Petri net is involved - the lights are switched by the scene itself.
+ */
+class TestScene {
+
+	// Time between two switches of the traffic lights (s).
+	static final double PHASE_TIME = 30.;
+
+	final SimulationWorld world;
+	final TrafficLight west_light = new TrafficLight();
+	final TrafficLight south_light = new TrafficLight();
+	final Lane west_light_lane, south_light_lane;
+	final VehicleConsumerEvaluation east_end, west_end;
+	final VehicleCounter counter;
+	final List<VehicleProducer> producers;
+	private int phase = 0;
+
+	TestScene(long seed) {
+		this(new SimulationWorld(seed));
+	}
+
+	/*
+	 * The scene is constructed in the given world (which is made current for the calling thread).
+	 */
+	TestScene(SimulationWorld world) {
+		this.world = world;
+		world.makeCurrent();
+		VehicleProducer eastStart = new VehicleProducer(800, 100);
+		new Lane("EastToWestLane", eastStart, new VehicleConsumer(100, 100));
+
+		VehicleProducer westStart = new VehicleProducer(100, 200);
+		east_end = new VehicleConsumerEvaluation(800, 200, "EastEnd");
+		LaneExtension westLaneSplit = new LaneExtension(200, 200);
+		LaneExtension westLaneExtension = new LaneExtension(240, 240);
+		LaneExtension westToSouthTurn = new LaneExtension(400, 240);
+		west_light.setEndPoint(440, 200);
+		west_light.setStartPoint(480, 200);
+		west_light.setTrafficLightPosition(420, 220);
+		new Lane("WestIncoming", westStart, westLaneSplit);
+		west_light_lane = new Lane("WestTrafficLightLane", westLaneSplit, west_light);
+		new Lane("EastDestinationLane", west_light, east_end);
+		new Lane("WestToSouthTurnLane", westLaneSplit, westLaneExtension);
+		new Lane("WestToSouthTurnLane2", westLaneExtension, westToSouthTurn);
+		new Lane("SouthDestinationLane", westToSouthTurn, new VehicleConsumer(400, 500));
+
+		VehicleProducer southStart = new VehicleProducer(460, 500);
+		west_end = new VehicleConsumerEvaluation(100, 140, "WestEnd");
+		LaneExtension southToWestTurn = new LaneExtension(460, 140);
+		LaneExtension southLaneSplit = new LaneExtension(460, 400);
+		LaneExtension southLaneExtension = new LaneExtension(500, 360);
+		LaneExtension southToEastTurn = new LaneExtension(500, 240);
+		south_light.setEndPoint(460, 220);
+		south_light.setStartPoint(460, 180);
+		south_light.setTrafficLightPosition(480, 220);
+		new Lane("SouthIncoming", southStart, southLaneSplit);
+		south_light_lane = new Lane("SouthTrafficLightLane", southLaneSplit, south_light);
+		new Lane("SouthToWestTurnLane", south_light, southToWestTurn);
+		new Lane("WestDestinationLane", southToWestTurn, west_end);
+		new Lane("SouthToEastTurnLane1", southLaneSplit, southLaneExtension);
+		new Lane("SouthToEastTurnLane2", southLaneExtension, southToEastTurn);
+		new Lane("EastDestinationLane2", southToEastTurn, new VehicleConsumer(800, 240));
+
+		counter = new VehicleCounter(south_light_lane, 50, 1f, 10);
+		producers = Arrays.asList(eastStart, westStart, southStart);
+		switchLights();
+	}
+
+	private void switchLights() {
+		west_light.setTrafficLightGreen(phase == 0 ? Color.GREEN : Color.RED);
+		south_light.setTrafficLightGreen(phase == 1 ? Color.GREEN : Color.RED);
+		phase = 1 - phase;
+	}
+
+	/*
+	 * Run the scene for a number of light phases in the given update mode.
+	 */
+	void run(HeadlessSimulation.UpdateMode mode, int phases) {
+		world.makeCurrent();
+		HeadlessSimulation simulation = new HeadlessSimulation(world);
+		simulation.setUpdateMode(mode);
+		for (int i = 0; i < phases; i++) {
+			simulation.run(PHASE_TIME);
+			switchLights();
+		}
+	}
+
+	/*
+	 * The measurements of the scene - equal for equal runs.
+	 */
+	String fingerprint() {
+		return east_end.getNumberOfVehicles() + " " + east_end.getAverageTimeOfVehicles()
+				+ " / " + west_end.getNumberOfVehicles() + " " + west_end.getAverageTimeOfVehicles()
+				+ " / " + counter.getTotal_vehicles() + " " + counter.getMeanVelocity()
+				+ " " + counter.getMeanHeadway()
+				+ " / " + world.getVehicleStateStore().getNumberOfVehicles();
+	}
+}
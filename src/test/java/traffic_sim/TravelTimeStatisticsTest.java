@@ -0,0 +1,85 @@
+package traffic_sim;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Buckets of the travel time histogram, percentiles and throughput windows.
+ */
+public class TravelTimeStatisticsTest extends TestCase {
+
+	private static final int LAST_BUCKET = TravelTimeStatistics.bucketIndex(Long.MAX_VALUE);
+
+	public void testBucketsAreContiguous() {
+		assertEquals(0, TravelTimeStatistics.bucketStart(0));
+		for (int i = 0; i < LAST_BUCKET; i++) {
+			long start = TravelTimeStatistics.bucketStart(i);
+			long end = start + TravelTimeStatistics.bucketWidth(i);
+			assertEquals("start of bucket " + (i + 1), end, TravelTimeStatistics.bucketStart(i + 1));
+			assertEquals(i, TravelTimeStatistics.bucketIndex(start));
+			assertEquals(i, TravelTimeStatistics.bucketIndex(end - 1));
+		}
+	}
+
+	public void testSmallTimesHaveTheirOwnBucket() {
+		for (long millis = 0; millis < 128; millis++) {
+			assertEquals(millis, TravelTimeStatistics.bucketIndex(millis));
+			assertEquals(1, TravelTimeStatistics.bucketWidth((int) millis));
+		}
+		assertEquals(128, TravelTimeStatistics.bucketStart(128));
+		assertEquals(2, TravelTimeStatistics.bucketWidth(128));
+	}
+
+	public void testRelativeErrorOfTheBuckets() {
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			long millis = random.nextLong() >>> (24 + random.nextInt(40));
+			if (millis >= 1L << 40) {
+				continue;
+			}
+			int index = TravelTimeStatistics.bucketIndex(millis);
+			long start = TravelTimeStatistics.bucketStart(index);
+			long width = TravelTimeStatistics.bucketWidth(index);
+			assertTrue(millis + " in bucket from " + start, start <= millis && millis < start + width);
+			assertTrue(width == 1 || width * 64 <= start);
+		}
+	}
+
+	public void testLongTimesEndInTheLastBucket() {
+		long limit = 1L << 40;
+		assertEquals(LAST_BUCKET, TravelTimeStatistics.bucketIndex(limit - 1));
+		assertEquals(LAST_BUCKET, TravelTimeStatistics.bucketIndex(limit));
+		assertEquals(LAST_BUCKET, TravelTimeStatistics.bucketIndex(limit * 1000));
+	}
+
+	public void testPercentiles() {
+		TravelTimeStatistics statistics = new TravelTimeStatistics();
+		assertTrue(Double.isNaN(statistics.getPercentile(50)));
+		for (int i = 1; i <= 1000; i++) {
+			statistics.record(i, i / 10.);
+		}
+		assertEquals(1000, statistics.getCount());
+		assertEquals(50.05, statistics.getMean(), 1e-9);
+		assertEquals(100., statistics.getMax(), 0.);
+		assertEquals(50., statistics.getPercentile(50), 50. / 64);
+		assertEquals(99., statistics.getPercentile(99), 99. / 64);
+		assertEquals(100., statistics.getPercentile(100), 100. / 64);
+	}
+
+	public void testThroughput() {
+		TravelTimeStatistics statistics = new TravelTimeStatistics(10.);
+		// 2 vehicles per second in the first 20 s, 1 per second afterwards.
+		for (int i = 0; i < 40; i++) {
+			statistics.record(i * 0.5, 30.);
+		}
+		for (int i = 20; i < 40; i++) {
+			statistics.record(i, 30.);
+		}
+		assertEquals(2., statistics.getThroughput(20., 2), 1e-9);
+		assertEquals(1., statistics.getThroughput(40., 2), 1e-9);
+		assertEquals(1.5, statistics.getThroughput(40., 4), 1e-9);
+		// Windows older than the kept ones are not counted.
+		assertEquals(0., statistics.getThroughput(10000., 2), 0.);
+	}
+}
@@ -0,0 +1,39 @@
+package traffic_sim;
+
+import junit.framework.TestCase;
+
+/**
+ * All update modes of a simulation step give the same results for the same seed.
+ */
+public class UpdateModeTest extends TestCase {
+
+	private static final int PHASES = 40;
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	private static TestScene run(HeadlessSimulation.UpdateMode mode) {
+		TestScene scene = new TestScene(42);
+		scene.run(mode, PHASES);
+		return scene;
+	}
+
+	public void testAllModesAreEqual() {
+		TestScene serial = run(HeadlessSimulation.UpdateMode.SERIAL);
+		// Cars queue at the lights and are still on the lanes at the end.
+		assertTrue(serial.east_end.getNumberOfVehicles() > 100);
+		assertTrue(serial.world.getVehicleStateStore().getNumberOfVehicles() > 0);
+		assertEquals(serial.fingerprint(), run(HeadlessSimulation.UpdateMode.PARALLEL).fingerprint());
+		assertEquals(serial.fingerprint(), run(HeadlessSimulation.UpdateMode.EVENT_DRIVEN).fingerprint());
+	}
+
+	public void testVehiclesArrive() {
+		TestScene scene = new TestScene(42);
+		scene.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		assertTrue(scene.east_end.getNumberOfVehicles() > 0);
+		assertTrue(scene.west_end.getNumberOfVehicles() > 0);
+		assertTrue(scene.counter.getTotal_vehicles() > 0);
+	}
+}
@@ -0,0 +1,69 @@
+package traffic_sim;
+
+import junit.framework.TestCase;
+
+/**
+ * Counting and measuring of the vehicles passing a VehicleCounter.
+ */
+public class VehicleCounterTest extends TestCase {
+
+	private static final int CROSSINGS = 1000;
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	private static VehicleCounter counter(float accuracy) {
+		new SimulationWorld(5).makeCurrent();
+		Lane lane = new Lane("Lane", new VehicleProducer(0, 0), new VehicleConsumer(200, 0));
+		return new VehicleCounter(lane, 50, accuracy, 10);
+	}
+
+	public void testAccuracyOnlyAppliesToTheCount() {
+		VehicleCounter counter = counter(0.5f);
+		for (int i = 0; i < CROSSINGS; i++) {
+			counter.vehicleCrossed(null, 2. * i, 10. + (i % 2));
+		}
+		assertEquals(CROSSINGS, counter.getNumberOfCrossings());
+		assertEquals(0.5 * CROSSINGS, counter.getTotal_vehicles(), 0.1 * CROSSINGS);
+		assertEquals(2., counter.getMeanHeadway(), 1e-9);
+		assertEquals(10.5, counter.getMeanVelocity(), 1e-9);
+		assertEquals(2. * (CROSSINGS - 1), counter.getLastCrossingTime(), 0.);
+		assertEquals(11., counter.getLastCrossingVelocity(), 0.);
+	}
+
+	public void testNoMeasurementsWithoutCrossings() {
+		VehicleCounter counter = counter(1f);
+		assertEquals(0, counter.getTotal_vehicles());
+		assertTrue(Double.isNaN(counter.getMeanVelocity()));
+		assertTrue(Double.isNaN(counter.getMeanHeadway()));
+		counter.vehicleCrossed(null, 1., 10.);
+		assertEquals(10., counter.getMeanVelocity(), 0.);
+		assertTrue(Double.isNaN(counter.getMeanHeadway()));
+	}
+
+	public void testHistoryOfTheCounts() {
+		VehicleCounter counter = counter(1f);
+		counter.vehicleCrossed(null, 1., 10.);
+		counter.vehicleCrossed(null, 2., 10.);
+		assertFalse(counter.isIdle());
+		counter.updateStep(0.1);
+		assertEquals(0.2, counter.getRelativeFreq(), 1e-9);
+		for (int i = 0; i < 10; i++) {
+			assertFalse(counter.isIdle());
+			counter.updateStep(0.1);
+		}
+		assertEquals(0., counter.getRelativeFreq(), 0.);
+		assertTrue(counter.isIdle());
+	}
+
+	public void testLaneReportsEveryCrossing() {
+		TestScene scene = new TestScene(42);
+		scene.run(HeadlessSimulation.UpdateMode.EVENT_DRIVEN, 10);
+		// The counter of the scene has an accuracy of 1.
+		assertTrue(scene.counter.getNumberOfCrossings() > 0);
+		assertEquals(scene.counter.getNumberOfCrossings(), scene.counter.getTotal_vehicles());
+		assertTrue(scene.counter.getOccupancy() > 0.);
+	}
+}
@@ -0,0 +1,71 @@
+package traffic_sim;
+
+import junit.framework.TestCase;
+
+/**
+ * Recycling of vehicles by the VehiclePool and handles of recycled vehicles.
+ */
+public class VehiclePoolTest extends TestCase {
+
+	private static final int PHASES = 20;
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	private static String run(boolean recycling) {
+		TestScene scene = new TestScene(7);
+		scene.world.getVehiclePool().setRecycling(recycling);
+		scene.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		return scene.fingerprint();
+	}
+
+	public void testRecyclingDoesNotChangeTheResults() {
+		assertEquals(run(false), run(true));
+	}
+
+	public void testVehiclesAreReused() {
+		TestScene scene = new TestScene(7);
+		scene.run(HeadlessSimulation.UpdateMode.SERIAL, PHASES);
+		VehiclePool pool = scene.world.getVehiclePool();
+		long arrived = scene.east_end.getNumberOfVehicles() + scene.west_end.getNumberOfVehicles();
+		assertTrue(pool.getNumberOfCreatedVehicles() < arrived);
+	}
+
+	public void testNoReuseWithoutRecycling() {
+		new SimulationWorld(1).makeCurrent();
+		Lane lane = new Lane("Lane", new VehicleProducer(0, 0), new VehicleConsumer(100, 0));
+		VehiclePool pool = lane.getWorld().getVehiclePool();
+		pool.setRecycling(false);
+		Vehicle first = pool.obtain(lane);
+		first.removeVehicleFromLane();
+		assertNotSame(first, pool.obtain(lane));
+		assertEquals(0, pool.getNumberOfFreeVehicles());
+	}
+
+	public void testStaleHandleIsDetected() {
+		new SimulationWorld(1).makeCurrent();
+		Lane lane = new Lane("Lane", new VehicleProducer(0, 0), new VehicleConsumer(100, 0));
+		VehiclePool pool = lane.getWorld().getVehiclePool();
+		Vehicle handle = pool.obtain(lane);
+		int generation = handle.getGeneration();
+		handle.checkGeneration(generation);
+		handle.removeVehicleFromLane();
+		try {
+			handle.checkGeneration(generation);
+			fail("handle of a removed vehicle");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Vehicle reused = pool.obtain(lane);
+		assertSame(handle, reused);
+		try {
+			handle.checkGeneration(generation);
+			fail("handle of a reused vehicle");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		reused.checkGeneration(reused.getGeneration());
+	}
+}
@@ -0,0 +1,70 @@
+package traffic_sim;
+
+import junit.framework.TestCase;
+
+/**
+ * Slots of the VehicleStateStore and vehicles which left the simulation.
+ */
+public class VehicleStateStoreTest extends TestCase {
+
+	private Lane lane;
+
+	@Override
+	protected void setUp() {
+		new SimulationWorld(1).makeCurrent();
+		lane = new Lane("Lane", new VehicleProducer(0, 0), new VehicleConsumer(100, 0));
+	}
+
+	@Override
+	protected void tearDown() {
+		SimulationWorld.resetCurrent();
+	}
+
+	public void testSlotsAreReused() {
+		VehicleStateStore store = lane.store;
+		Vehicle first = new Vehicle("first", lane);
+		int slot = first.getSlot();
+		first.removeVehicleFromLane();
+		assertEquals(-1, first.getSlot());
+		assertEquals(0, store.getNumberOfVehicles());
+		Vehicle second = new Vehicle("second", lane);
+		assertEquals(slot, second.getSlot());
+		assertEquals(1, store.getNumberOfVehicles());
+	}
+
+	public void testRemovedVehicleRejectsAccess() {
+		Vehicle vehicle = new Vehicle("car", lane);
+		vehicle.removeVehicleFromLane();
+		try {
+			vehicle.getPositionInLane();
+			fail("position of a removed vehicle");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			vehicle.getCurrentLane();
+			fail("lane of a removed vehicle");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			vehicle.removeVehicleFromLane();
+			fail("vehicle removed twice");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	public void testDoubleReleaseIsRejected() {
+		VehicleStateStore store = lane.store;
+		Vehicle vehicle = new Vehicle("car", lane);
+		int slot = vehicle.getSlot();
+		vehicle.removeVehicleFromLane();
+		try {
+			store.release(slot);
+			fail("slot released twice");
+		} catch (IllegalStateException expected) {
+		}
+		// The slot is handed out once only.
+		Vehicle first = new Vehicle("first", lane);
+		Vehicle second = new Vehicle("second", lane);
+		assertTrue(first.getSlot() != second.getSlot());
+	}
+}